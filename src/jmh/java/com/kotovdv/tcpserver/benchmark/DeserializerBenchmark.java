@@ -0,0 +1,107 @@
+package com.kotovdv.tcpserver.benchmark;
+
+import com.kotovdv.tcpserver.message.DefaultMessageDecoder;
+import com.kotovdv.tcpserver.message.DefaultMessageDeserializer;
+import com.kotovdv.tcpserver.message.Message;
+import com.kotovdv.tcpserver.message.MessageView;
+import com.kotovdv.tcpserver.message.MessageViewDecoder;
+import com.kotovdv.tcpserver.message.PayloadCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of message decoding from memory for different payload sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeserializerBenchmark {
+
+    private static final int MESSAGES = 1000;
+
+    @Param({"8", "64", "512", "4096"})
+    public int payloadSize;
+
+    private final DefaultMessageDeserializer deserializer = new DefaultMessageDeserializer();
+    //All the payloads are the same, so payloads up to the max cached length always hit.
+    private final DefaultMessageDeserializer cachedDeserializer = new DefaultMessageDeserializer(Integer.MAX_VALUE, new PayloadCache(1024));
+    private final DefaultMessageDecoder decoder = new DefaultMessageDecoder();
+    private final MessageViewDecoder viewDecoder = new MessageViewDecoder();
+
+    private byte[] bytes;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        ByteBuffer frames = ByteBuffer.allocate(MESSAGES * (7 + payloadSize + 1));
+        for (int i = 0; i < MESSAGES; i++) {
+            frames.put((byte) 1);
+            frames.putShort((short) i);
+            frames.putInt(i);
+            for (int j = 0; j < payloadSize; j++) {
+                frames.put((byte) ('a' + j % 26));
+            }
+            frames.put((byte) DefaultMessageDeserializer.PAYLOAD_TERMINATION_CHAR);
+        }
+        bytes = frames.array();
+
+        buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void deserializer(Blackhole blackhole) throws IOException {
+        DataInputStream stream = new DataInputStream(new BufferedInputStream(new ByteArrayInputStream(bytes), 4096));
+        Optional<Message> message;
+        while ((message = deserializer.readNext(stream)).isPresent()) {
+            blackhole.consume(message.get());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void cachedDeserializer(Blackhole blackhole) throws IOException {
+        DataInputStream stream = new DataInputStream(new BufferedInputStream(new ByteArrayInputStream(bytes), 4096));
+        Optional<Message> message;
+        while ((message = cachedDeserializer.readNext(stream)).isPresent()) {
+            blackhole.consume(message.get());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void decoder(Blackhole blackhole) throws IOException {
+        buffer.rewind();
+        decoder.decode(buffer, blackhole::consume);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void viewDecoder(Blackhole blackhole) throws IOException {
+        buffer.rewind();
+        viewDecoder.decode(buffer, (MessageView view) -> blackhole.consume(view.userId()));
+    }
+}
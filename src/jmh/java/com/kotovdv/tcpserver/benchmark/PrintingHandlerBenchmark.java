@@ -0,0 +1,59 @@
+package com.kotovdv.tcpserver.benchmark;
+
+import com.kotovdv.tcpserver.message.AsyncPrintingMessageHandler;
+import com.kotovdv.tcpserver.message.Message;
+import com.kotovdv.tcpserver.message.PrintingMessageHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of printing handlers shared by several connection threads, output is discarded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class PrintingHandlerBenchmark {
+
+    private final Message message = new Message((byte) 1, (short) 42, 123456, "Hello world");
+
+    private PrintingMessageHandler printingHandler;
+    private AsyncPrintingMessageHandler asyncPrintingHandler;
+
+    @Setup
+    public void setUp() {
+        printingHandler = new PrintingMessageHandler(OutputStream.nullOutputStream());
+        asyncPrintingHandler = new AsyncPrintingMessageHandler(OutputStream.nullOutputStream());
+    }
+
+    @TearDown
+    public void tearDown() {
+        asyncPrintingHandler.stop(1, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public void printing() {
+        printingHandler.handle(message);
+    }
+
+    @Benchmark
+    public void asyncPrinting() {
+        asyncPrintingHandler.handle(message);
+    }
+}
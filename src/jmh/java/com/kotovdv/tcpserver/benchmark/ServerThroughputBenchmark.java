@@ -0,0 +1,133 @@
+package com.kotovdv.tcpserver.benchmark;
+
+import com.kotovdv.tcpserver.core.message.MessageHandler;
+import com.kotovdv.tcpserver.core.server.Server;
+import com.kotovdv.tcpserver.core.server.SocketConnectionHandler;
+import com.kotovdv.tcpserver.core.server.nio.ChannelConnectionHandler;
+import com.kotovdv.tcpserver.core.server.nio.NioServer;
+import com.kotovdv.tcpserver.message.DefaultMessageDecoder;
+import com.kotovdv.tcpserver.message.DefaultMessageDeserializer;
+import com.kotovdv.tcpserver.message.Message;
+import com.kotovdv.tcpserver.util.TCPServerClient;
+import com.kotovdv.tcpserver.util.TCPUtil;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End to end throughput of the server receiving messages from K clients over loopback.
+ * Amount of messages received by the server handler per second is reported as "messages" secondary score.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ServerThroughputBenchmark {
+
+    private static final int MESSAGES_PER_CLIENT = 1000;
+    private static final int MAX_CLIENTS = 16;
+
+    @Param({"1", "4", "16"})
+    public int clientsAmount;
+
+    @Param({"BLOCKING", "NIO"})
+    public String engine;
+
+    private final LongAdder received = new LongAdder();
+    private final Message message = new Message((byte) 1, (short) 42, 123456, "Hello world");
+
+    private Server server;
+    private NioServer nioServer;
+    private List<TCPServerClient> clients;
+    private ExecutorService senders;
+
+    @Setup
+    public void setUp() {
+        int port = TCPUtil.findFreePort();
+        MessageHandler<Message> handler = ignored -> received.increment();
+
+        if ("NIO".equals(engine)) {
+            nioServer = new NioServer(port, new ChannelConnectionHandler<>(handler, DefaultMessageDecoder::new));
+            nioServer.start();
+        } else {
+            server = new Server(port, MAX_CLIENTS, new SocketConnectionHandler<>(handler, new DefaultMessageDeserializer()));
+            server.start();
+        }
+
+        clients = new ArrayList<>();
+        for (int i = 0; i < clientsAmount; i++) {
+            clients.add(TCPServerClient.create(port));
+        }
+        senders = Executors.newFixedThreadPool(clientsAmount);
+    }
+
+    @TearDown
+    public void tearDown() {
+        senders.shutdownNow();
+        clients.forEach(TCPServerClient::close);
+        if (server != null) {
+            server.stop(1, TimeUnit.SECONDS);
+        }
+        if (nioServer != null) {
+            nioServer.stop(1, TimeUnit.SECONDS);
+        }
+    }
+
+    @Benchmark
+    public long receive(Counters counters) throws Exception {
+        long target = received.sum() + (long) MESSAGES_PER_CLIENT * clientsAmount;
+
+        List<Future<?>> sent = new ArrayList<>();
+        for (TCPServerClient client : clients) {
+            sent.add(senders.submit(() -> {
+                for (int i = 0; i < MESSAGES_PER_CLIENT; i++) {
+                    client.sendMessage(message);
+                }
+            }));
+        }
+        for (Future<?> future : sent) {
+            future.get();
+        }
+
+        long count;
+        while ((count = received.sum()) < target) {
+            LockSupport.parkNanos(10_000);
+        }
+        counters.messages += (long) MESSAGES_PER_CLIENT * clientsAmount;
+        return count;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+
+        public long messages;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            messages = 0;
+        }
+    }
+}
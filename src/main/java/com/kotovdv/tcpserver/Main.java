@@ -1,23 +1,31 @@
 package com.kotovdv.tcpserver;
 
+import com.kotovdv.tcpserver.core.metrics.MetricsRegistry;
 import com.kotovdv.tcpserver.core.server.Server;
 import com.kotovdv.tcpserver.core.server.SocketConnectionHandler;
-import com.kotovdv.tcpserver.message.DefaultMessageDeserializer;
-import com.kotovdv.tcpserver.message.PrintingMessageHandler;
+import com.kotovdv.tcpserver.message.AsyncPrintingMessageHandler;
+import com.kotovdv.tcpserver.message.VersionedMessageDeserializer;
 import org.apache.logging.log4j.LogManager;
 
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.util.concurrent.TimeUnit;
 
 public class Main {
 
     public static void main(String[] args) {
-        Server server = new Server(8087, 16, new SocketConnectionHandler<>(
-                new PrintingMessageHandler(System.out),
-                new DefaultMessageDeserializer()
-        ));
+        AsyncPrintingMessageHandler handler = new AsyncPrintingMessageHandler(new FileOutputStream(FileDescriptor.out));
+        MetricsRegistry metrics = new MetricsRegistry();
+        metrics.registerMBean("main");
+        Server server = Server.builder(8087, 16, new SocketConnectionHandler<>(
+                handler,
+                new VersionedMessageDeserializer()
+        )).metrics(metrics).build();
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            server.stop(3, TimeUnit.SECONDS);
+            server.drainAndStop(3, TimeUnit.SECONDS);
+            handler.stop(1, TimeUnit.SECONDS);
+            metrics.close();
             LogManager.shutdown();
         }));
 
@@ -0,0 +1,216 @@
+package com.kotovdv.tcpserver.core.buffer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of direct buffers grouped into power of two size classes.
+ * <p>
+ * Released buffers are first kept in a small cache of the releasing platform thread, so thread, which handles
+ * connections one after another, reuses the same buffers without any contention. Buffers, which do not fit
+ * into the cache, go to the shared queue of their size class, until pool reaches its max pooled bytes.
+ * Virtual threads are short lived, so they always use shared queues.
+ * <p>
+ * With leak detection enabled, buffers, which became unreachable without being released, are reported to the log.
+ */
+public final class BufferPool {
+
+    private static final Logger log = LogManager.getLogger(BufferPool.class);
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final int MIN_BUFFER_SIZE = 256;
+    private static final int DEFAULT_MAX_BUFFER_SIZE = 64 * 1024;
+    private static final long DEFAULT_MAX_POOLED_BYTES = 64L * 1024 * 1024;
+    private static final int THREAD_CACHE_SIZE = 8;
+
+    private final int maxBufferSize;
+    private final long maxPooledBytes;
+    private final boolean leakDetection;
+    private final List<Queue<ByteBuffer>> sizeClasses;
+    private final ThreadLocal<ThreadCache> threadCaches;
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final LongAdder borrowed = new LongAdder();
+    private final LongAdder leaked = new LongAdder();
+
+    public BufferPool() {
+        this(DEFAULT_MAX_BUFFER_SIZE, DEFAULT_MAX_POOLED_BYTES, true);
+    }
+
+    /**
+     * @param maxBufferSize  Size of the largest size class, rounded up to the power of two. Larger buffers are not pooled.
+     * @param maxPooledBytes Max total capacity of buffers kept in shared queues.
+     * @param leakDetection  Whether to report buffers, which were garbage collected without being released.
+     */
+    public BufferPool(int maxBufferSize, long maxPooledBytes, boolean leakDetection) {
+        if (maxBufferSize < MIN_BUFFER_SIZE || maxBufferSize > 1 << 30)
+            throw new IllegalArgumentException("Illegal max buffer size value " + maxBufferSize);
+        if (maxPooledBytes < 0)
+            throw new IllegalArgumentException("Illegal max pooled bytes value " + maxPooledBytes);
+
+        this.maxBufferSize = sizeOf(classOf(maxBufferSize));
+        this.maxPooledBytes = maxPooledBytes;
+        this.leakDetection = leakDetection;
+        int classes = classOf(this.maxBufferSize) + 1;
+        this.sizeClasses = new ArrayList<>(classes);
+        for (int i = 0; i < classes; i++) {
+            sizeClasses.add(new ConcurrentLinkedQueue<>());
+        }
+        this.threadCaches = ThreadLocal.withInitial(() -> new ThreadCache(classes));
+    }
+
+    /**
+     * @return Cleared buffer with capacity of at least the given size, which must be released once it is not used anymore.
+     */
+    public PooledBuffer acquire(int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("Illegal buffer size value " + size);
+
+        borrowed.increment();
+        if (size > maxBufferSize)
+            return new PooledBuffer(this, -1, ByteBuffer.allocateDirect(size));
+
+        int sizeClass = classOf(size);
+        ByteBuffer buffer = null;
+        if (!Thread.currentThread().isVirtual()) {
+            buffer = threadCaches.get().poll(sizeClass);
+        }
+        if (buffer == null) {
+            buffer = sizeClasses.get(sizeClass).poll();
+            if (buffer != null) {
+                pooledBytes.addAndGet(-buffer.capacity());
+            }
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(sizeOf(sizeClass));
+        }
+        buffer.clear();
+        return new PooledBuffer(this, sizeClass, buffer);
+    }
+
+    /**
+     * @return Amount of buffers acquired and not released yet.
+     */
+    public long borrowedBuffers() {
+        return borrowed.sum();
+    }
+
+    /**
+     * @return Total capacity of buffers in shared queues, not including thread caches.
+     */
+    public long pooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * @return Amount of buffers, which were garbage collected without being released.
+     */
+    public long leakedBuffers() {
+        return leaked.sum();
+    }
+
+    LeakReport track(PooledBuffer pooledBuffer, int capacity) {
+        if (!leakDetection)
+            return null;
+        LeakReport report = new LeakReport(this, capacity, Thread.currentThread().getName());
+        report.cleanable = CLEANER.register(pooledBuffer, report);
+        return report;
+    }
+
+    void release(int sizeClass, ByteBuffer buffer) {
+        borrowed.decrement();
+        //Buffers above max size are not pooled, their memory is freed once they are garbage collected.
+        if (sizeClass < 0)
+            return;
+
+        if (!Thread.currentThread().isVirtual() && threadCaches.get().offer(sizeClass, buffer))
+            return;
+
+        if (pooledBytes.addAndGet(buffer.capacity()) > maxPooledBytes) {
+            pooledBytes.addAndGet(-buffer.capacity());
+            return;
+        }
+        sizeClasses.get(sizeClass).offer(buffer);
+    }
+
+    private static int classOf(int size) {
+        int rounded = Math.max(MIN_BUFFER_SIZE, size);
+        return 32 - Integer.numberOfLeadingZeros(rounded - 1) - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+    }
+
+    private static int sizeOf(int sizeClass) {
+        return MIN_BUFFER_SIZE << sizeClass;
+    }
+
+    /**
+     * Buffers of a single thread, up to {@link #THREAD_CACHE_SIZE} per size class.
+     */
+    private static final class ThreadCache {
+
+        private final ByteBuffer[][] buffers;
+        private final int[] sizes;
+
+        private ThreadCache(int sizeClasses) {
+            this.buffers = new ByteBuffer[sizeClasses][THREAD_CACHE_SIZE];
+            this.sizes = new int[sizeClasses];
+        }
+
+        ByteBuffer poll(int sizeClass) {
+            if (sizes[sizeClass] == 0)
+                return null;
+            int index = --sizes[sizeClass];
+            ByteBuffer buffer = buffers[sizeClass][index];
+            buffers[sizeClass][index] = null;
+            return buffer;
+        }
+
+        boolean offer(int sizeClass, ByteBuffer buffer) {
+            if (sizes[sizeClass] == THREAD_CACHE_SIZE)
+                return false;
+            buffers[sizeClass][sizes[sizeClass]++] = buffer;
+            return true;
+        }
+    }
+
+    /**
+     * Cleaning action of a tracked buffer. Must not reference the buffer itself, otherwise it never becomes unreachable.
+     */
+    static final class LeakReport implements Runnable {
+
+        private final BufferPool pool;
+        private final int capacity;
+        private final String threadName;
+        private Cleaner.Cleanable cleanable;
+        private volatile boolean released;
+
+        private LeakReport(BufferPool pool, int capacity, String threadName) {
+            this.pool = pool;
+            this.capacity = capacity;
+            this.threadName = threadName;
+        }
+
+        /**
+         * Unregisters buffer, cleaning action is run right away, but it does not report released buffers.
+         */
+        void released() {
+            released = true;
+            cleanable.clean();
+        }
+
+        @Override
+        public void run() {
+            if (released)
+                return;
+            pool.leaked.increment();
+            pool.borrowed.decrement();
+            log.error("Buffer of [{}] bytes acquired by thread [{}] was garbage collected without being released", capacity, threadName);
+        }
+    }
+}
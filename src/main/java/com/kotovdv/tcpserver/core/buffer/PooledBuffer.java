@@ -0,0 +1,46 @@
+package com.kotovdv.tcpserver.core.buffer;
+
+import java.lang.ref.Reference;
+import java.nio.ByteBuffer;
+
+/**
+ * Direct buffer borrowed from {@link BufferPool}. Buffer must not be used after it is released.
+ */
+public final class PooledBuffer implements AutoCloseable {
+
+    private final BufferPool pool;
+    private final int sizeClass;
+    private final BufferPool.LeakReport leakReport;
+    private ByteBuffer buffer;
+
+    PooledBuffer(BufferPool pool, int sizeClass, ByteBuffer buffer) {
+        this.pool = pool;
+        this.sizeClass = sizeClass;
+        this.buffer = buffer;
+        this.leakReport = pool.track(this, buffer.capacity());
+    }
+
+    public ByteBuffer buffer() {
+        if (buffer == null)
+            throw new IllegalStateException("Buffer is already released");
+        return buffer;
+    }
+
+    /**
+     * Returns buffer to the pool. Subsequent calls do nothing.
+     */
+    @Override
+    public void close() {
+        if (buffer == null)
+            return;
+
+        ByteBuffer released = buffer;
+        buffer = null;
+        if (leakReport != null) {
+            leakReport.released();
+        }
+        pool.release(sizeClass, released);
+        //Handle must stay reachable till here, otherwise it could be reported as leaked while being released.
+        Reference.reachabilityFence(this);
+    }
+}
@@ -0,0 +1,106 @@
+package com.kotovdv.tcpserver.core.buffer;
+
+/**
+ * Size of connection receive buffers, either fixed or adapting to the observed read sizes.
+ * <p>
+ * Adaptive size works in the same way as Netty's AdaptiveRecvByteBufAllocator: it quadruples
+ * once a read fills the whole buffer and halves once two reads in a row would fit into half of it.
+ * Sizes are powers of two, so they map directly to {@link BufferPool} size classes.
+ */
+public final class ReceiveBufferSize {
+
+    private final int min;
+    private final int initial;
+    private final int max;
+
+    private ReceiveBufferSize(int min, int initial, int max) {
+        if (min < 1 || min > initial || initial > max)
+            throw new IllegalArgumentException("Illegal receive buffer sizes " + min + ", " + initial + ", " + max);
+        this.min = min;
+        this.initial = initial;
+        this.max = max;
+    }
+
+    public static ReceiveBufferSize fixed(int size) {
+        return new ReceiveBufferSize(size, size, size);
+    }
+
+    /**
+     * @param min     Min size, rounded up to the power of two.
+     * @param initial Size of the first buffer of each connection, rounded up to the power of two.
+     * @param max     Max size, rounded up to the power of two.
+     */
+    public static ReceiveBufferSize adaptive(int min, int initial, int max) {
+        return new ReceiveBufferSize(powerOfTwo(min), powerOfTwo(initial), powerOfTwo(max));
+    }
+
+    public int min() {
+        return min;
+    }
+
+    public int initial() {
+        return initial;
+    }
+
+    public int max() {
+        return max;
+    }
+
+    /**
+     * @return Sizer of a single connection.
+     */
+    public Sizer newSizer() {
+        return new Sizer(min, initial, max);
+    }
+
+    private static int powerOfTwo(int size) {
+        if (size < 1 || size > 1 << 30)
+            throw new IllegalArgumentException("Illegal receive buffer size " + size);
+        return size == 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+    }
+
+    /**
+     * Tracks read sizes of a single connection. Not thread safe.
+     */
+    public static final class Sizer {
+
+        private final int min;
+        private final int max;
+        private int size;
+        private boolean decreaseNow;
+
+        private Sizer(int min, int initial, int max) {
+            this.min = min;
+            this.size = initial;
+            this.max = max;
+        }
+
+        /**
+         * @return Size of the buffer for the next read.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param read Amount of bytes the last read put into the buffer of {@link #size()} bytes.
+         */
+        public void record(int read) {
+            if (read >= size) {
+                size = (int) Math.min(max, (long) size << 2);
+                decreaseNow = false;
+                return;
+            }
+            if (read <= size >>> 1 && size > min) {
+                if (decreaseNow) {
+                    size = Math.max(min, size >>> 1);
+                    decreaseNow = false;
+                } else {
+                    decreaseNow = true;
+                }
+                return;
+            }
+            decreaseNow = false;
+        }
+    }
+}
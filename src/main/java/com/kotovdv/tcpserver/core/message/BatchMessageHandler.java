@@ -0,0 +1,25 @@
+package com.kotovdv.tcpserver.core.message;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Message handler, which prefers to receive messages in batches.
+ * <p>
+ * Batch contains messages of a single connection in order of arrival. Batches can not be used together
+ * with decoders reusing the same message instance, e.g. {@link com.kotovdv.tcpserver.message.MessageViewDecoder}.
+ */
+public interface BatchMessageHandler<T> extends MessageHandler<T> {
+
+    /**
+     * Handles batch of deserialized messages.
+     *
+     * @param messages Messages. List is reused after the call returns, so it must be copied in order to be kept.
+     */
+    void handleBatch(List<T> messages);
+
+    @Override
+    default void handle(T message) {
+        handleBatch(Collections.singletonList(message));
+    }
+}
@@ -0,0 +1,15 @@
+package com.kotovdv.tcpserver.core.message;
+
+/**
+ * Message handler, which answers messages with responses written back on the same connection.
+ */
+public interface DuplexMessageHandler<T, R> {
+
+    /**
+     * Handles deserialized message.
+     *
+     * @param message Message.
+     * @return Response to the message or null if there is none. Responses are written in order of the messages.
+     */
+    R handle(T message);
+}
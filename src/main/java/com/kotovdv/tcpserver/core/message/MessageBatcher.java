@@ -0,0 +1,69 @@
+package com.kotovdv.tcpserver.core.message;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects messages of a single connection into batches for {@link BatchMessageHandler}.
+ * <p>
+ * Batch is delivered once it reaches max size, once its first message waited for max linger time,
+ * or on explicit {@link #flush()}, which connection handlers call when there are no more received bytes to decode.
+ * Messages for regular handlers are passed on right away.
+ * Not thread safe, single instance is used by one connection.
+ */
+public final class MessageBatcher<T> {
+
+    private final MessageHandler<T> handler;
+    private final BatchMessageHandler<T> batchHandler;
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+    private final List<T> batch;
+
+    private long batchStart;
+
+    public MessageBatcher(MessageHandler<T> handler,
+                          int maxBatchSize,
+                          long maxLinger,
+                          TimeUnit unit) {
+        if (maxBatchSize < 1)
+            throw new IllegalArgumentException("Illegal max batch size value " + maxBatchSize);
+        if (maxLinger < 0)
+            throw new IllegalArgumentException("Illegal max linger value " + maxLinger);
+
+        this.handler = handler;
+        this.batchHandler = handler instanceof BatchMessageHandler && maxBatchSize > 1
+                ? (BatchMessageHandler<T>) handler
+                : null;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerNanos = unit.toNanos(maxLinger);
+        this.batch = batchHandler == null ? null : new ArrayList<>(Math.min(maxBatchSize, 1024));
+    }
+
+    public void add(T message) {
+        if (batchHandler == null) {
+            handler.handle(message);
+            return;
+        }
+
+        if (batch.isEmpty()) {
+            batchStart = System.nanoTime();
+        }
+        batch.add(message);
+
+        if (batch.size() >= maxBatchSize || System.nanoTime() - batchStart >= maxLingerNanos) {
+            flush();
+        }
+    }
+
+    public void flush() {
+        if (batchHandler == null || batch.isEmpty())
+            return;
+
+        try {
+            batchHandler.handleBatch(batch);
+        } finally {
+            batch.clear();
+        }
+    }
+}
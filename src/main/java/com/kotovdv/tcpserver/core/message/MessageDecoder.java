@@ -0,0 +1,29 @@
+package com.kotovdv.tcpserver.core.message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * Non blocking counterpart of {@link MessageDeserializer}.
+ * <p>
+ * Decoder keeps state of partially received message between calls, so single instance must be used
+ * for exactly one connection.
+ */
+public interface MessageDecoder<T> {
+
+    /**
+     * Decodes all the messages, which are complete within the given bytes and previously received ones.
+     *
+     * @param buffer   Buffer with newly received bytes. All remaining bytes are consumed,
+     *                 bytes of incomplete message are kept by decoder till the next call.
+     * @param consumer Consumer of decoded messages, called zero or more times in order of arrival.
+     * @throws IOException If received bytes can not be transformed to instance of type T.
+     */
+    void decode(ByteBuffer buffer, Consumer<? super T> consumer) throws IOException;
+
+    /**
+     * @return true if decoder holds bytes of a message, which is not complete yet.
+     */
+    boolean hasPartialMessage();
+}
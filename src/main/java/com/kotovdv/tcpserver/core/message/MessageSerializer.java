@@ -0,0 +1,22 @@
+package com.kotovdv.tcpserver.core.message;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Counterpart of {@link MessageDeserializer}, which encodes instances of type T to bytes.
+ */
+public interface MessageSerializer<T> {
+
+    /**
+     * @return Exact amount of bytes the message is encoded to.
+     */
+    int sizeOf(T message);
+
+    /**
+     * Encodes message into the buffer starting at its position and advances the position past the message.
+     *
+     * @throws java.nio.BufferOverflowException If buffer has less than {@link #sizeOf(Object)} bytes remaining,
+     *                                          in which case its position is not changed.
+     */
+    void serialize(T message, ByteBuffer buffer);
+}
@@ -0,0 +1,117 @@
+package com.kotovdv.tcpserver.core.message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Encodes messages into reused direct buffers and writes them to the channel in batches.
+ * <p>
+ * Added messages are packed into chunks of fixed size, all the filled chunks are written
+ * with a single gathering write on {@link #flush()}, after which they are reused for the next batch.
+ * Not thread safe, single instance is used by one connection.
+ */
+public final class MessageWriter<T> {
+
+    private static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    private final MessageSerializer<T> serializer;
+    private final GatheringByteChannel channel;
+    private final int chunkSize;
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+
+    private ByteBuffer[] pending = new ByteBuffer[4];
+    private int pendingAmount;
+    private int pendingBytes;
+
+    public MessageWriter(MessageSerializer<T> serializer, GatheringByteChannel channel) {
+        this(serializer, channel, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize Size of a single direct buffer. Larger messages get a dedicated buffer, which is not reused.
+     */
+    public MessageWriter(MessageSerializer<T> serializer, GatheringByteChannel channel, int chunkSize) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("Illegal chunk size value " + chunkSize);
+
+        this.serializer = serializer;
+        this.channel = channel;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Encodes message, which is going to be written on the next flush.
+     */
+    public void add(T message) {
+        int size = serializer.sizeOf(message);
+        ByteBuffer chunk = pendingAmount == 0 ? null : pending[pendingAmount - 1];
+        if (chunk == null || chunk.remaining() < size) {
+            chunk = size > chunkSize ? ByteBuffer.allocateDirect(size) : takeChunk();
+            if (pendingAmount == pending.length) {
+                pending = Arrays.copyOf(pending, pendingAmount * 2);
+            }
+            pending[pendingAmount++] = chunk;
+        }
+        serializer.serialize(message, chunk);
+        pendingBytes += size;
+    }
+
+    /**
+     * @return Amount of bytes added since the last flush.
+     */
+    public int pendingBytes() {
+        return pendingBytes;
+    }
+
+    /**
+     * Writes all the added messages, blocking until the channel accepts all of them.
+     */
+    public void flush() throws IOException {
+        if (pendingAmount == 0)
+            return;
+
+        for (int i = 0; i < pendingAmount; i++) {
+            pending[i].flip();
+        }
+        try {
+            int first = 0;
+            while (first < pendingAmount) {
+                channel.write(pending, first, pendingAmount - first);
+                while (first < pendingAmount && !pending[first].hasRemaining()) {
+                    first++;
+                }
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Adds the message and flushes it right away together with previously added ones.
+     */
+    public void write(T message) throws IOException {
+        add(message);
+        flush();
+    }
+
+    private ByteBuffer takeChunk() {
+        ByteBuffer chunk = free.poll();
+        return chunk != null ? chunk : ByteBuffer.allocateDirect(chunkSize);
+    }
+
+    private void release() {
+        for (int i = 0; i < pendingAmount; i++) {
+            ByteBuffer chunk = pending[i];
+            pending[i] = null;
+            if (chunk.capacity() == chunkSize) {
+                chunk.clear();
+                free.push(chunk);
+            }
+        }
+        pendingAmount = 0;
+        pendingBytes = 0;
+    }
+}
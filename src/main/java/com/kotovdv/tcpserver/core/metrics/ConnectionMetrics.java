@@ -0,0 +1,88 @@
+package com.kotovdv.tcpserver.core.metrics;
+
+import com.kotovdv.tcpserver.core.message.BatchMessageHandler;
+import com.kotovdv.tcpserver.core.message.MessageHandler;
+
+/**
+ * Instrumentation of a single connection. Used only by the thread handling the connection.
+ * <p>
+ * Callers check {@link #isEnabled()} before measuring latencies, so that disabled metrics cost nothing.
+ */
+public interface ConnectionMetrics {
+
+    ConnectionMetrics DISABLED = new ConnectionMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void bytesRead(int amount) {
+        }
+
+        @Override
+        public void messageDecoded(long nanos) {
+        }
+
+        @Override
+        public void decodeFailed() {
+        }
+
+        @Override
+        public void handled(long nanos) {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    boolean isEnabled();
+
+    void bytesRead(int amount);
+
+    /**
+     * Called once per decoded message, so that latencies of all the engines have the same granularity.
+     *
+     * @param nanos Time spent decoding the message, not including its handling, or negative value if it was not measured.
+     */
+    void messageDecoded(long nanos);
+
+    void decodeFailed();
+
+    /**
+     * @param nanos Time the message handler spent on a single call.
+     */
+    void handled(long nanos);
+
+    void close();
+
+    /**
+     * @return Handler, which records latency of each call to the given one, or the handler itself if metrics are disabled.
+     */
+    default <T> MessageHandler<T> measure(MessageHandler<T> handler) {
+        if (!isEnabled())
+            return handler;
+
+        if (handler instanceof BatchMessageHandler) {
+            BatchMessageHandler<T> batchHandler = (BatchMessageHandler<T>) handler;
+            return (BatchMessageHandler<T>) messages -> {
+                long start = System.nanoTime();
+                try {
+                    batchHandler.handleBatch(messages);
+                } finally {
+                    handled(System.nanoTime() - start);
+                }
+            };
+        }
+
+        return message -> {
+            long start = System.nanoTime();
+            try {
+                handler.handle(message);
+            } finally {
+                handled(System.nanoTime() - start);
+            }
+        };
+    }
+}
@@ -0,0 +1,127 @@
+package com.kotovdv.tcpserver.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent histogram of latencies in nanoseconds with log-linear buckets in the spirit of HdrHistogram.
+ * <p>
+ * Values below 128 are counted exactly, larger ones fall into one of 64 buckets per power of two,
+ * so any recorded value is reported with at most 1.6% error. Recording is wait free and does not allocate.
+ * <p>
+ * Besides totals since creation histogram reports intervals, i.e. values recorded since the previous interval snapshot,
+ * so that periodic reports are not dominated by history.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    private static final int BUCKETS = 64 - SUB_BUCKET_BITS;
+    private static final int SIZE = SUB_BUCKETS + (BUCKETS - 1) * HALF_SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SIZE);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalValue = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+    private final Object intervalLock = new Object();
+
+    //Guarded by interval lock.
+    private final long[] intervalStart = new long[SIZE];
+    private long intervalStartValue;
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        totalCount.increment();
+        totalValue.add(value);
+        max.accumulate(value);
+    }
+
+    public long count() {
+        return totalCount.sum();
+    }
+
+    /**
+     * @return Percentiles of all the values recorded since creation.
+     */
+    public LatencySnapshot snapshot() {
+        long[] copy = new long[SIZE];
+        long count = 0;
+        for (int i = 0; i < SIZE; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return snapshot(copy, count, totalValue.sum(), max.get());
+    }
+
+    /**
+     * @return Percentiles of values recorded since the previous call. Max is reported with bucket precision.
+     */
+    public LatencySnapshot intervalSnapshot() {
+        synchronized (intervalLock) {
+            long[] delta = new long[SIZE];
+            long count = 0;
+            int highest = -1;
+            for (int i = 0; i < SIZE; i++) {
+                long current = counts.get(i);
+                delta[i] = current - intervalStart[i];
+                intervalStart[i] = current;
+                count += delta[i];
+                if (delta[i] > 0) {
+                    highest = i;
+                }
+            }
+            //Value recorded concurrently may fall into the other interval than its count, so mean is approximate.
+            long value = totalValue.sum();
+            long intervalValue = value - intervalStartValue;
+            intervalStartValue = value;
+
+            return snapshot(delta, count, intervalValue, highest < 0 ? 0 : highestValueOf(highest));
+        }
+    }
+
+    private static LatencySnapshot snapshot(long[] counts, long count, long value, long max) {
+        return new LatencySnapshot(
+                count,
+                count == 0 ? 0 : value / count,
+                valueAt(counts, count, 0.50),
+                valueAt(counts, count, 0.90),
+                valueAt(counts, count, 0.99),
+                valueAt(counts, count, 0.999),
+                max
+        );
+    }
+
+    private static long valueAt(long[] counts, long count, double percentile) {
+        if (count == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return highestValueOf(i);
+        }
+        return highestValueOf(counts.length - 1);
+    }
+
+    static int indexOf(long value) {
+        int bucket = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1));
+        if (bucket == 0)
+            return (int) value;
+        //Top bit of sub bucket is always set above the first bucket, so only the lower half of indexes is used.
+        int subBucket = (int) (value >>> bucket);
+        return SUB_BUCKETS + (bucket - 1) * HALF_SUB_BUCKETS + subBucket - HALF_SUB_BUCKETS;
+    }
+
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int bucket = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        long subBucket = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << bucket) - 1;
+    }
+}
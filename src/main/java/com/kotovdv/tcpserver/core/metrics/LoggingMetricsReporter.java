@@ -0,0 +1,38 @@
+package com.kotovdv.tcpserver.core.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs connection counters, per second rates and latency percentiles since previous report.
+ */
+public class LoggingMetricsReporter implements MetricsReporter {
+
+    private static final Logger log = LogManager.getLogger(LoggingMetricsReporter.class);
+
+    private MetricsSnapshot previous;
+
+    @Override
+    public void report(MetricsSnapshot snapshot) {
+        if (previous != null) {
+            double seconds = (snapshot.timestampNanos - previous.timestampNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+            log.info("Connections: active [{}], pending [{}], accepted [{}/s], rejected [{}/s]; read [{} B/s], decoded [{} msg/s], decode errors [{}]",
+                    snapshot.activeConnections,
+                    snapshot.pendingConnections,
+                    rate(snapshot.acceptedConnections - previous.acceptedConnections, seconds),
+                    rate(snapshot.rejectedConnections - previous.rejectedConnections, seconds),
+                    rate(snapshot.bytesRead - previous.bytesRead, seconds),
+                    rate(snapshot.messagesDecoded - previous.messagesDecoded, seconds),
+                    snapshot.decodeErrors);
+            log.info("Decode latency, ns: [{}]", snapshot.decodeLatency);
+            log.info("Handler latency, ns: [{}]", snapshot.handlerLatency);
+        }
+        previous = snapshot;
+    }
+
+    private static long rate(long delta, double seconds) {
+        return seconds <= 0 ? 0 : Math.round(delta / seconds);
+    }
+}
@@ -0,0 +1,259 @@
+package com.kotovdv.tcpserver.core.metrics;
+
+import com.kotovdv.tcpserver.core.exception.TCPServerException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.net.SocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects metrics of a server into striped counters and latency histograms.
+ * <p>
+ * Metrics can be read through {@link #snapshot()}, pushed to {@link MetricsReporter} periodically
+ * or exposed as JMX MBean.
+ */
+public class MetricsRegistry implements ServerMetrics, ServerMetricsMXBean, AutoCloseable {
+
+    private static final Logger log = LogManager.getLogger(MetricsRegistry.class);
+
+    private final LongAdder acceptedConnections = new LongAdder();
+    private final LongAdder rejectedConnections = new LongAdder();
+    private final LongAdder activeConnections = new LongAdder();
+    private final LongAdder queuedConnections = new LongAdder();
+    private final LongAdder pendingConnections = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder messagesDecoded = new LongAdder();
+    private final LongAdder decodeErrors = new LongAdder();
+    private final LatencyHistogram decodeLatency = new LatencyHistogram();
+    private final LatencyHistogram handlerLatency = new LatencyHistogram();
+    private final Object lock = new Object();
+
+    private ScheduledExecutorService reporting;
+    private ObjectName mbeanName;
+
+    @Override
+    public void connectionRejected() {
+        rejectedConnections.increment();
+    }
+
+    @Override
+    public void connectionQueued() {
+        queuedConnections.increment();
+        pendingConnections.increment();
+    }
+
+    @Override
+    public void connectionDequeued() {
+        pendingConnections.decrement();
+    }
+
+    @Override
+    public ConnectionMetrics connectionAccepted(SocketAddress remoteAddress) {
+        acceptedConnections.increment();
+        activeConnections.increment();
+        return new RegistryConnectionMetrics(remoteAddress);
+    }
+
+    /**
+     * @return Counters and latencies since metrics were created.
+     */
+    public MetricsSnapshot snapshot() {
+        return snapshot(false);
+    }
+
+    /**
+     * @param interval Whether latencies cover only the values recorded since the previous interval snapshot.
+     */
+    private MetricsSnapshot snapshot(boolean interval) {
+        return new MetricsSnapshot(
+                System.nanoTime(),
+                acceptedConnections.sum(),
+                rejectedConnections.sum(),
+                activeConnections.sum(),
+                queuedConnections.sum(),
+                pendingConnections.sum(),
+                bytesRead.sum(),
+                messagesDecoded.sum(),
+                decodeErrors.sum(),
+                interval ? decodeLatency.intervalSnapshot() : decodeLatency.snapshot(),
+                interval ? handlerLatency.intervalSnapshot() : handlerLatency.snapshot()
+        );
+    }
+
+    /**
+     * Starts passing snapshots to the reporter from a background thread. Only one reporter may be active at a time.
+     * Latencies of the reported snapshots cover only the period since the previous report.
+     */
+    public void startReporting(MetricsReporter reporter, long period, TimeUnit unit) {
+        synchronized (lock) {
+            if (reporting != null)
+                throw new IllegalStateException("Metrics reporting is already started");
+
+            reporting = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporting.scheduleAtFixedRate(() -> {
+                try {
+                    reporter.report(snapshot(true));
+                } catch (RuntimeException e) {
+                    log.error("Failed to report metrics", e);
+                }
+            }, period, period, unit);
+        }
+    }
+
+    /**
+     * Registers metrics in the platform MBean server as com.kotovdv.tcpserver:type=ServerMetrics,name={name}.
+     */
+    public void registerMBean(String name) {
+        synchronized (lock) {
+            if (mbeanName != null)
+                throw new IllegalStateException("Metrics are already registered as " + mbeanName);
+            try {
+                ObjectName objectName = new ObjectName("com.kotovdv.tcpserver:type=ServerMetrics,name=" + ObjectName.quote(name));
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+                mbeanName = objectName;
+            } catch (JMException e) {
+                throw new TCPServerException("Failed to register metrics MBean " + name, e);
+            }
+        }
+    }
+
+    /**
+     * Stops reporting and unregisters MBean. Metrics are still collected afterwards.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (reporting != null) {
+                reporting.shutdownNow();
+                reporting = null;
+            }
+            if (mbeanName != null) {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                try {
+                    server.unregisterMBean(mbeanName);
+                } catch (JMException e) {
+                    log.error("Failed to unregister metrics MBean", e);
+                }
+                mbeanName = null;
+            }
+        }
+    }
+
+    @Override
+    public long getAcceptedConnections() {
+        return acceptedConnections.sum();
+    }
+
+    @Override
+    public long getRejectedConnections() {
+        return rejectedConnections.sum();
+    }
+
+    @Override
+    public long getActiveConnections() {
+        return activeConnections.sum();
+    }
+
+    @Override
+    public long getQueuedConnections() {
+        return queuedConnections.sum();
+    }
+
+    @Override
+    public long getPendingConnections() {
+        return pendingConnections.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getMessagesDecoded() {
+        return messagesDecoded.sum();
+    }
+
+    @Override
+    public long getDecodeErrors() {
+        return decodeErrors.sum();
+    }
+
+    @Override
+    public LatencySnapshot getDecodeLatency() {
+        return decodeLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getHandlerLatency() {
+        return handlerLatency.snapshot();
+    }
+
+    /**
+     * Updates server wide metrics and keeps totals of the connection, which are logged when it is closed.
+     */
+    private final class RegistryConnectionMetrics implements ConnectionMetrics {
+
+        private final SocketAddress remoteAddress;
+        private final long openedAt = System.nanoTime();
+        private long bytes;
+        private long messages;
+        private boolean closed;
+
+        private RegistryConnectionMetrics(SocketAddress remoteAddress) {
+            this.remoteAddress = remoteAddress;
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return true;
+        }
+
+        @Override
+        public void bytesRead(int amount) {
+            bytes += amount;
+            bytesRead.add(amount);
+        }
+
+        @Override
+        public void messageDecoded(long nanos) {
+            messages++;
+            messagesDecoded.increment();
+            if (nanos >= 0) {
+                decodeLatency.record(nanos);
+            }
+        }
+
+        @Override
+        public void decodeFailed() {
+            decodeErrors.increment();
+        }
+
+        @Override
+        public void handled(long nanos) {
+            handlerLatency.record(nanos);
+        }
+
+        @Override
+        public void close() {
+            if (closed)
+                return;
+            closed = true;
+            activeConnections.decrement();
+            log.debug("Connection [{}] closed after [{}] ms, [{}] bytes read, [{}] messages decoded",
+                    remoteAddress, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - openedAt), bytes, messages);
+        }
+    }
+}
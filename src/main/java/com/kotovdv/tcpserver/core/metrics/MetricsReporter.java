@@ -0,0 +1,12 @@
+package com.kotovdv.tcpserver.core.metrics;
+
+/**
+ * Receives periodic metrics snapshots, see {@link MetricsRegistry#startReporting(MetricsReporter, long, java.util.concurrent.TimeUnit)}.
+ * <p>
+ * Called from the single reporting thread, so implementations may keep previous snapshot to calculate rates.
+ */
+@FunctionalInterface
+public interface MetricsReporter {
+
+    void report(MetricsSnapshot snapshot);
+}
@@ -0,0 +1,44 @@
+package com.kotovdv.tcpserver.core.metrics;
+
+/**
+ * Server wide metrics at a moment of time. Counters are totals since metrics were created.
+ * Latencies are totals too, except for snapshots passed to {@link MetricsReporter}, which cover the period since the previous report.
+ */
+public final class MetricsSnapshot {
+
+    public final long timestampNanos;
+    public final long acceptedConnections;
+    public final long rejectedConnections;
+    public final long activeConnections;
+    public final long queuedConnections;
+    public final long pendingConnections;
+    public final long bytesRead;
+    public final long messagesDecoded;
+    public final long decodeErrors;
+    public final LatencySnapshot decodeLatency;
+    public final LatencySnapshot handlerLatency;
+
+    public MetricsSnapshot(long timestampNanos,
+                           long acceptedConnections,
+                           long rejectedConnections,
+                           long activeConnections,
+                           long queuedConnections,
+                           long pendingConnections,
+                           long bytesRead,
+                           long messagesDecoded,
+                           long decodeErrors,
+                           LatencySnapshot decodeLatency,
+                           LatencySnapshot handlerLatency) {
+        this.timestampNanos = timestampNanos;
+        this.acceptedConnections = acceptedConnections;
+        this.rejectedConnections = rejectedConnections;
+        this.activeConnections = activeConnections;
+        this.queuedConnections = queuedConnections;
+        this.pendingConnections = pendingConnections;
+        this.bytesRead = bytesRead;
+        this.messagesDecoded = messagesDecoded;
+        this.decodeErrors = decodeErrors;
+        this.decodeLatency = decodeLatency;
+        this.handlerLatency = handlerLatency;
+    }
+}
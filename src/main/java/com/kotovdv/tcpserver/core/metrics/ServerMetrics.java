@@ -0,0 +1,48 @@
+package com.kotovdv.tcpserver.core.metrics;
+
+import java.net.SocketAddress;
+
+/**
+ * Server wide instrumentation called by connection dispatchers.
+ * <p>
+ * {@link #DISABLED} instance is used by default, it ignores all the events and hands out disabled
+ * connection metrics, so servers without metrics do not even read the clock.
+ */
+public interface ServerMetrics {
+
+    ServerMetrics DISABLED = new ServerMetrics() {
+        @Override
+        public void connectionRejected() {
+        }
+
+        @Override
+        public void connectionQueued() {
+        }
+
+        @Override
+        public void connectionDequeued() {
+        }
+
+        @Override
+        public ConnectionMetrics connectionAccepted(SocketAddress remoteAddress) {
+            return ConnectionMetrics.DISABLED;
+        }
+    };
+
+    void connectionRejected();
+
+    /**
+     * Called for accepted connection, which has to wait for a free worker.
+     */
+    void connectionQueued();
+
+    /**
+     * Called once queued connection got a worker or was dropped.
+     */
+    void connectionDequeued();
+
+    /**
+     * @return Metrics of the accepted connection, which must be closed together with it.
+     */
+    ConnectionMetrics connectionAccepted(SocketAddress remoteAddress);
+}
@@ -0,0 +1,27 @@
+package com.kotovdv.tcpserver.core.metrics;
+
+/**
+ * JMX view of {@link MetricsRegistry}. Latencies are in nanoseconds.
+ */
+public interface ServerMetricsMXBean {
+
+    long getAcceptedConnections();
+
+    long getRejectedConnections();
+
+    long getActiveConnections();
+
+    long getQueuedConnections();
+
+    long getPendingConnections();
+
+    long getBytesRead();
+
+    long getMessagesDecoded();
+
+    long getDecodeErrors();
+
+    LatencySnapshot getDecodeLatency();
+
+    LatencySnapshot getHandlerLatency();
+}
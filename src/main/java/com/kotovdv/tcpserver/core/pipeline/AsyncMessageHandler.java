@@ -0,0 +1,256 @@
+package com.kotovdv.tcpserver.core.pipeline;
+
+import com.kotovdv.tcpserver.core.message.MessageHandler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToIntFunction;
+
+/**
+ * Message handler, which decouples reading threads from the actual message handling.
+ * <p>
+ * Messages are put to bounded lock free queues, each drained by its own worker thread.
+ * Queue is chosen by the ordering key of the message, so messages with the same key are handled
+ * by the same worker in order of arrival. What happens when the queue is full is defined by {@link BackpressurePolicy}.
+ * <p>
+ * Messages are handled after {@link #handle(Object)} returns, so decoders reusing the same message instance,
+ * e.g. {@link com.kotovdv.tcpserver.message.MessageViewDecoder}, can not be used with it.
+ */
+public class AsyncMessageHandler<T> implements MessageHandler<T> {
+
+    private static final Logger log = LogManager.getLogger(AsyncMessageHandler.class);
+    private static final int SPINS_BEFORE_PARK = 100;
+    private static final long PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final ToIntFunction<? super T> orderingKey;
+    private final BackpressurePolicy policy;
+    private final List<Worker<T>> workers;
+    //Shared with workers instead of the handler itself, so that threads started by constructor never see it half built.
+    private final Control control = new Control();
+
+    /**
+     * @param handler       Handler called by worker threads.
+     * @param orderingKey   Key, which defines the unit of ordering, e.g. user id.
+     * @param workersAmount Amount of worker threads.
+     * @param queueCapacity Capacity of the queue of each worker, rounded up to the power of two.
+     * @param policy        Policy applied to messages, which do not fit into the queue.
+     */
+    public AsyncMessageHandler(MessageHandler<T> handler,
+                               ToIntFunction<? super T> orderingKey,
+                               int workersAmount,
+                               int queueCapacity,
+                               BackpressurePolicy policy) {
+        this(nCopies(handler, workersAmount), orderingKey, queueCapacity, policy);
+    }
+
+    /**
+     * Creates handler with a worker per each of the given handlers.
+     * Each handler is called only by its own worker thread, so it may keep state without any synchronization.
+     *
+     * @param handlers      Handlers of the workers.
+     * @param orderingKey   Key, which defines the unit of ordering, e.g. user id.
+     * @param queueCapacity Capacity of the queue of each worker, rounded up to the power of two.
+     * @param policy        Policy applied to messages, which do not fit into the queue.
+     */
+    public AsyncMessageHandler(List<? extends MessageHandler<T>> handlers,
+                               ToIntFunction<? super T> orderingKey,
+                               int queueCapacity,
+                               BackpressurePolicy policy) {
+        if (handlers.isEmpty())
+            throw new IllegalArgumentException("At least one handler is required");
+
+        this.orderingKey = Objects.requireNonNull(orderingKey, "Ordering key can not be null");
+        this.policy = Objects.requireNonNull(policy, "Backpressure policy can not be null");
+
+        this.workers = new ArrayList<>(handlers.size());
+        for (int i = 0; i < handlers.size(); i++) {
+            MessageHandler<T> handler = Objects.requireNonNull(handlers.get(i), "Message handler can not be null");
+            Worker<T> worker = new Worker<>(control, handler, new RingBuffer<>(queueCapacity));
+            worker.thread = new Thread(worker, "message-worker-" + i);
+            workers.add(worker);
+        }
+        for (Worker<T> worker : workers) {
+            worker.thread.start();
+        }
+    }
+
+    @Override
+    public void handle(T message) {
+        Worker<T> worker = workers.get(workerOf(orderingKey.applyAsInt(message)));
+        if (!control.running || !enqueue(worker, message)) {
+            control.dropped.increment();
+            return;
+        }
+        //Worker may have exited after the check above, in which case nobody is going to poll the message.
+        if (worker.stopped) {
+            worker.dropQueued();
+            return;
+        }
+        worker.wakeUp();
+    }
+
+    /**
+     * @return Amount of messages dropped due to full queues or after stop.
+     */
+    public long droppedMessages() {
+        return control.dropped.sum();
+    }
+
+    /**
+     * @return Approximate amount of messages waiting in queues, which can be used as a load signal.
+     */
+    public long pendingMessages() {
+        long pending = 0;
+        for (Worker<T> worker : workers) {
+            pending += worker.queue.size();
+        }
+        return pending;
+    }
+
+    /**
+     * Stops accepting new messages and waits until workers handle already queued ones.
+     * Messages, which are still queued once timeout expires, are dropped.
+     */
+    public void stop(long timeout, TimeUnit unit) {
+        control.running = false;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            for (Worker<T> worker : workers) {
+                LockSupport.unpark(worker.thread);
+                worker.thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Worker<T> worker : workers) {
+            worker.thread.interrupt();
+        }
+    }
+
+    private boolean enqueue(Worker<T> worker, T message) {
+        RingBuffer<T> queue = worker.queue;
+        if (queue.offer(message))
+            return true;
+
+        switch (policy) {
+            case DROP_NEWEST:
+                return false;
+            case DROP_OLDEST:
+                do {
+                    if (queue.poll() != null) {
+                        control.dropped.increment();
+                    }
+                } while (!queue.offer(message));
+                return true;
+            case BLOCK:
+            default:
+                do {
+                    if (!control.running || worker.stopped || Thread.currentThread().isInterrupted())
+                        return false;
+                    LockSupport.parkNanos(PRODUCER_PARK_NANOS);
+                } while (!queue.offer(message));
+                return true;
+        }
+    }
+
+    /**
+     * @return Index of the worker handling messages with the given ordering key.
+     */
+    public int workerOf(int key) {
+        int hash = key * 0x9E3779B9;
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % workers.size();
+    }
+
+    private static <T> List<MessageHandler<T>> nCopies(MessageHandler<T> handler, int workersAmount) {
+        if (workersAmount < 1)
+            throw new IllegalArgumentException("Illegal workers amount value " + workersAmount);
+        return Collections.nCopies(workersAmount, handler);
+    }
+
+    private static final class Control {
+
+        private final LongAdder dropped = new LongAdder();
+        private volatile boolean running = true;
+    }
+
+    private static final class Worker<T> implements Runnable {
+
+        private final Control control;
+        private final MessageHandler<T> handler;
+        private final RingBuffer<T> queue;
+        private volatile boolean sleeping;
+        private volatile boolean stopped;
+        private Thread thread;
+
+        private Worker(Control control, MessageHandler<T> handler, RingBuffer<T> queue) {
+            this.control = control;
+            this.handler = handler;
+            this.queue = queue;
+        }
+
+        private void wakeUp() {
+            if (sleeping) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        /**
+         * Drops messages, which are left in the queue of the stopped worker.
+         * Called by the worker on exit and by producers, which enqueued after it, so none of them is lost uncounted.
+         */
+        private void dropQueued() {
+            while (queue.poll() != null) {
+                control.dropped.increment();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                loop();
+            } finally {
+                stopped = true;
+                dropQueued();
+            }
+        }
+
+        private void loop() {
+            int idle = 0;
+            while ((control.running || !queue.isEmpty()) && !Thread.currentThread().isInterrupted()) {
+                T message = queue.poll();
+                if (message != null) {
+                    idle = 0;
+                    handle(message);
+                    continue;
+                }
+
+                if (++idle < SPINS_BEFORE_PARK) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+
+                //Producers check the flag after publishing, so either they see it or we see their message.
+                sleeping = true;
+                if (control.running && queue.isEmpty()) {
+                    LockSupport.park(this);
+                }
+                sleeping = false;
+            }
+        }
+
+        private void handle(T message) {
+            try {
+                handler.handle(message);
+            } catch (RuntimeException e) {
+                log.error("Failed to handle message", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.kotovdv.tcpserver.core.pipeline;
+
+/**
+ * Defines what happens to a message, when queue of its worker is full.
+ */
+public enum BackpressurePolicy {
+
+    /**
+     * Reading thread waits until there is free space in the queue, which eventually stops reads from the socket.
+     */
+    BLOCK,
+
+    /**
+     * Message is dropped.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Oldest message in the queue is dropped in favour of the new one.
+     */
+    DROP_OLDEST
+}
@@ -0,0 +1,47 @@
+package com.kotovdv.tcpserver.core.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sustained rate and burst size of a token bucket.
+ */
+public final class RateLimit {
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+
+    private RateLimit(long intervalNanos, int burst) {
+        this.intervalNanos = intervalNanos;
+        this.toleranceNanos = intervalNanos * (burst - 1);
+    }
+
+    /**
+     * @param permits Amount of tokens refilled per period.
+     * @param burst   Capacity of the bucket, i.e. amount of tokens, which can be taken at once after the bucket was idle.
+     */
+    public static RateLimit of(long permits, long period, TimeUnit unit, int burst) {
+        if (permits < 1)
+            throw new IllegalArgumentException("Illegal permits value " + permits);
+        if (burst < 1)
+            throw new IllegalArgumentException("Illegal burst value " + burst);
+
+        long intervalNanos = unit.toNanos(period) / permits;
+        if (intervalNanos < 1)
+            throw new IllegalArgumentException("Illegal rate value " + permits + " per " + period + " " + unit);
+        return new RateLimit(intervalNanos, burst);
+    }
+
+    /**
+     * @return Time it takes to refill a single token.
+     */
+    long intervalNanos() {
+        return intervalNanos;
+    }
+
+    /**
+     * @return Time, by which bucket may run ahead of the sustained rate, i.e. refill time of burst - 1 tokens.
+     */
+    long toleranceNanos() {
+        return toleranceNanos;
+    }
+}
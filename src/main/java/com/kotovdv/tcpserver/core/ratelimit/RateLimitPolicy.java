@@ -0,0 +1,17 @@
+package com.kotovdv.tcpserver.core.ratelimit;
+
+/**
+ * Defines what happens to a message, when its token bucket is empty.
+ */
+public enum RateLimitPolicy {
+
+    /**
+     * Reading thread waits until the bucket has a token, which stops reads from the socket meanwhile.
+     */
+    DELAY,
+
+    /**
+     * Message is dropped and counted.
+     */
+    DROP
+}
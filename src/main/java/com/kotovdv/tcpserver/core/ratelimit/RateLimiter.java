@@ -0,0 +1,125 @@
+package com.kotovdv.tcpserver.core.ratelimit;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToIntFunction;
+
+/**
+ * Limits rate of messages of each connection and of each key of the messages, e.g. user ID, with token buckets.
+ * <p>
+ * Bucket of a connection is used only by the thread reading it, buckets of keys are shared by all the connections.
+ * Message has to take a token from both of them, otherwise it is delayed or dropped according to the policy.
+ * Dropped message may still have taken the token of its connection.
+ */
+public final class RateLimiter<T> {
+
+    public static final int DEFAULT_MAX_KEYS = 64 * 1024;
+
+    private final RateLimitPolicy policy;
+    private final RateLimit connectionLimit;
+    private final ToIntFunction<? super T> key;
+    private final TokenBucketMap keyBuckets;
+    private final LongAdder delayed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private RateLimiter(Builder<T> builder) {
+        this.policy = builder.policy;
+        this.connectionLimit = builder.connectionLimit;
+        this.key = builder.key;
+        this.keyBuckets = builder.keyLimit == null ? null : new TokenBucketMap(builder.keyLimit, builder.maxKeys);
+    }
+
+    public static <T> Builder<T> builder(RateLimitPolicy policy) {
+        return new Builder<>(policy);
+    }
+
+    /**
+     * @return Bucket for a new connection or null if connections are not limited.
+     */
+    public TokenBucket newConnectionBucket() {
+        return connectionLimit == null ? null : new TokenBucket(connectionLimit);
+    }
+
+    /**
+     * Takes tokens for the message, waiting for them with {@link RateLimitPolicy#DELAY}.
+     *
+     * @param connectionBucket Bucket of the connection, which message was read from.
+     * @return false if message has to be dropped.
+     */
+    public boolean acquire(T message, TokenBucket connectionBucket) {
+        return acquire(connectionBucket) && (keyBuckets == null || acquire(keyBuckets.get(key.applyAsInt(message))));
+    }
+
+    public long delayedMessages() {
+        return delayed.sum();
+    }
+
+    public long droppedMessages() {
+        return dropped.sum();
+    }
+
+    private boolean acquire(TokenBucket bucket) {
+        if (bucket == null)
+            return true;
+
+        long wait = bucket.tryAcquire(System.nanoTime());
+        if (wait == 0)
+            return true;
+        if (policy == RateLimitPolicy.DROP) {
+            dropped.increment();
+            return false;
+        }
+
+        delayed.increment();
+        while (wait > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(wait);
+            wait = bucket.tryAcquire(System.nanoTime());
+        }
+        return true;
+    }
+
+    public static final class Builder<T> {
+
+        private final RateLimitPolicy policy;
+        private RateLimit connectionLimit;
+        private RateLimit keyLimit;
+        private ToIntFunction<? super T> key;
+        private int maxKeys = DEFAULT_MAX_KEYS;
+
+        private Builder(RateLimitPolicy policy) {
+            this.policy = Objects.requireNonNull(policy, "Rate limit policy can not be null");
+        }
+
+        /**
+         * Limits rate of messages of each connection.
+         */
+        public Builder<T> perConnection(RateLimit limit) {
+            this.connectionLimit = limit;
+            return this;
+        }
+
+        /**
+         * Limits rate of messages of each key across all the connections.
+         */
+        public Builder<T> perKey(ToIntFunction<? super T> key, RateLimit limit) {
+            this.key = key;
+            this.keyLimit = limit;
+            return this;
+        }
+
+        /**
+         * Max amount of keys with buckets of their own, 65536 by default. The rest share a single bucket.
+         */
+        public Builder<T> maxKeys(int maxKeys) {
+            if (maxKeys < 1)
+                throw new IllegalArgumentException("Illegal max keys value " + maxKeys);
+            this.maxKeys = maxKeys;
+            return this;
+        }
+
+        public RateLimiter<T> build() {
+            return new RateLimiter<>(this);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.kotovdv.tcpserver.core.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock free token bucket.
+ * <p>
+ * Instead of the amount of tokens bucket keeps the time, when it is going to be full again, which accounts for refills
+ * without a refill task: taking a token moves that time one refill interval ahead with a single CAS, bucket is empty
+ * once the time is further ahead of now than the refill time of all the tokens.
+ */
+public final class TokenBucket {
+
+    private final int key;
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong fullAt;
+
+    public TokenBucket(RateLimit limit) {
+        this(0, limit);
+    }
+
+    TokenBucket(int key, RateLimit limit) {
+        this.key = key;
+        this.intervalNanos = limit.intervalNanos();
+        this.toleranceNanos = limit.toleranceNanos();
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime()) == 0;
+    }
+
+    /**
+     * Takes a token, if there is one.
+     *
+     * @param nowNanos Current value of {@link System#nanoTime()}.
+     * @return 0 if token was taken, otherwise time until the next token is refilled.
+     */
+    public long tryAcquire(long nowNanos) {
+        while (true) {
+            long current = fullAt.get();
+            long start = current - nowNanos > 0 ? current : nowNanos;
+            long wait = start - nowNanos - toleranceNanos;
+            if (wait > 0)
+                return wait;
+            if (fullAt.compareAndSet(current, start + intervalNanos))
+                return 0;
+        }
+    }
+
+    /**
+     * @return true if bucket has all of its tokens, i.e. it is indistinguishable from a new one.
+     */
+    boolean isFull(long nowNanos) {
+        return fullAt.get() - nowNanos <= 0;
+    }
+
+    int key() {
+        return key;
+    }
+}
@@ -0,0 +1,84 @@
+package com.kotovdv.tcpserver.core.ratelimit;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock free map of token buckets by int key, e.g. user ID, which creates buckets on first use.
+ * <p>
+ * Open addressing table of fixed capacity stores buckets, which hold their keys, so there is no boxing and no resize.
+ * Slots are never emptied, but bucket, which stayed idle long enough to be full again, is replaced by the bucket
+ * of a new key, so keys used once, e.g. made up by a client, do not hold their slots forever.
+ * Keys, which find neither free nor idle slot within a few probes, share the overflow bucket.
+ */
+public final class TokenBucketMap {
+
+    private static final int MAX_PROBES = 32;
+
+    private final RateLimit limit;
+    private final AtomicReferenceArray<TokenBucket> buckets;
+    private final int mask;
+    private final int probes;
+    private final TokenBucket overflow;
+
+    /**
+     * @param capacity Max amount of keys with buckets of their own, rounded up to the power of two.
+     */
+    public TokenBucketMap(RateLimit limit, int capacity) {
+        if (capacity < 1 || capacity > 1 << 30)
+            throw new IllegalArgumentException("Illegal capacity value " + capacity);
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.limit = limit;
+        this.buckets = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.probes = Math.min(size, MAX_PROBES);
+        this.overflow = new TokenBucket(limit);
+    }
+
+    public TokenBucket get(int key) {
+        return get(key, System.nanoTime());
+    }
+
+    /**
+     * @param nowNanos Current value of {@link System#nanoTime()}, which tells whether buckets are idle.
+     */
+    TokenBucket get(int key, long nowNanos) {
+        int start = hash(key);
+        while (true) {
+            int reclaimable = -1;
+            TokenBucket idle = null;
+            for (int i = 0; i < probes; i++) {
+                int index = (start + i) & mask;
+                TokenBucket bucket = buckets.get(index);
+                if (bucket == null) {
+                    TokenBucket created = new TokenBucket(key, limit);
+                    if (buckets.compareAndSet(index, null, created))
+                        return created;
+                    //Another thread took the slot, which may have been for the same key.
+                    bucket = buckets.get(index);
+                }
+                if (bucket.key() == key)
+                    return bucket;
+                if (idle == null && bucket.isFull(nowNanos)) {
+                    reclaimable = index;
+                    idle = bucket;
+                }
+            }
+            if (idle == null)
+                return overflow;
+
+            //Full bucket is the same as a new one, so its key loses nothing, if it comes back later.
+            TokenBucket created = new TokenBucket(key, limit);
+            if (buckets.compareAndSet(reclaimable, idle, created))
+                return created;
+        }
+    }
+
+    private static int hash(int key) {
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,102 @@
+package com.kotovdv.tcpserver.core.server;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Defines what {@link Server} does with connections above its max connections.
+ * <p>
+ * Up to max pending connections wait for a free worker, the rest are rejected right after accept,
+ * unless accept pause is set, in which case saturated server stops accepting for the pause
+ * and lets kernel backlog absorb the burst. Independently of that, new connections are shed
+ * while the load signal, e.g. {@link com.kotovdv.tcpserver.core.pipeline.AsyncMessageHandler#pendingMessages()},
+ * is above its limit.
+ */
+public final class AdmissionControl {
+
+    private static final AdmissionControl DEFAULTS = builder().build();
+
+    private final int maxPendingConnections;
+    private final long acceptPauseNanos;
+    private final LongSupplier inFlightMessages;
+    private final long maxInFlightMessages;
+
+    private AdmissionControl(Builder builder) {
+        this.maxPendingConnections = builder.maxPendingConnections;
+        this.acceptPauseNanos = builder.acceptPauseNanos;
+        this.inFlightMessages = builder.inFlightMessages;
+        this.maxInFlightMessages = builder.maxInFlightMessages;
+    }
+
+    /**
+     * @return No pending connections, no accept pause and no load shedding.
+     */
+    public static AdmissionControl defaults() {
+        return DEFAULTS;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int maxPendingConnections() {
+        return maxPendingConnections;
+    }
+
+    public long acceptPauseNanos() {
+        return acceptPauseNanos;
+    }
+
+    /**
+     * @return true if load signal is above its limit.
+     */
+    public boolean isOverloaded() {
+        return inFlightMessages != null && inFlightMessages.getAsLong() > maxInFlightMessages;
+    }
+
+    public static final class Builder {
+
+        private int maxPendingConnections;
+        private long acceptPauseNanos;
+        private LongSupplier inFlightMessages;
+        private long maxInFlightMessages;
+
+        private Builder() {
+        }
+
+        /**
+         * Amount of accepted connections, which may wait for a free worker above max connections.
+         */
+        public Builder maxPendingConnections(int maxPendingConnections) {
+            if (maxPendingConnections < 0)
+                throw new IllegalArgumentException("Illegal max pending connections value " + maxPendingConnections);
+            this.maxPendingConnections = maxPendingConnections;
+            return this;
+        }
+
+        /**
+         * Time to stop accepting for, once max connections and max pending connections are reached.
+         * Zero means connections are accepted and closed right away.
+         */
+        public Builder acceptPause(long pause, TimeUnit unit) {
+            if (pause < 0)
+                throw new IllegalArgumentException("Illegal accept pause value " + pause);
+            this.acceptPauseNanos = unit.toNanos(pause);
+            return this;
+        }
+
+        /**
+         * Reject new connections while in flight messages are above the limit.
+         */
+        public Builder shedAbove(LongSupplier inFlightMessages, long maxInFlightMessages) {
+            this.inFlightMessages = Objects.requireNonNull(inFlightMessages, "In flight messages can not be null");
+            this.maxInFlightMessages = maxInFlightMessages;
+            return this;
+        }
+
+        public AdmissionControl build() {
+            return new AdmissionControl(this);
+        }
+    }
+}
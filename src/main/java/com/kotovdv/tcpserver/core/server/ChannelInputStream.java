@@ -0,0 +1,223 @@
+package com.kotovdv.tcpserver.core.server;
+
+import com.kotovdv.tcpserver.core.buffer.BufferPool;
+import com.kotovdv.tcpserver.core.buffer.PooledBuffer;
+import com.kotovdv.tcpserver.core.buffer.ReceiveBufferSize;
+import com.kotovdv.tcpserver.core.metrics.ConnectionMetrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Buffered InputStream, which reads channel straight into direct buffers borrowed from the pool.
+ * <p>
+ * Receive buffer is replaced with a larger or smaller one between reads, as suggested by the receive buffer sizer.
+ * Marked bytes are kept on refill as long as they fit into the buffer and the read limit of the mark.
+ * Blocking channel reads ignore socket timeout, so with read timeout channel is read in non blocking mode
+ * and waits for data on a selector of its own.
+ */
+final class ChannelInputStream extends InputStream {
+
+    private final SocketChannel channel;
+    private final BufferPool bufferPool;
+    private final ReceiveBufferSize.Sizer sizer;
+    private final ConnectionMetrics metrics;
+    private final ConnectionWatchdog watchdog;
+    private final int readTimeoutMillis;
+    private final Selector selector;
+
+    private PooledBuffer pooledBuffer;
+    private ByteBuffer buffer;
+    private int bufferSize;
+    private int mark = -1;
+    private int markLimit;
+
+    ChannelInputStream(SocketChannel channel,
+                       BufferPool bufferPool,
+                       ReceiveBufferSize receiveBufferSize,
+                       ConnectionMetrics metrics,
+                       ConnectionWatchdog watchdog,
+                       int readTimeoutMillis) throws IOException {
+        this.channel = channel;
+        this.bufferPool = bufferPool;
+        this.sizer = receiveBufferSize.newSizer();
+        this.metrics = metrics;
+        this.watchdog = watchdog;
+        this.readTimeoutMillis = readTimeoutMillis;
+
+        if (readTimeoutMillis > 0) {
+            this.selector = Selector.open();
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+            //Closed channel stays registered until the next select, so it is not enough to stop waiting.
+            watchdog.onExpiry(selector::wakeup);
+        } else {
+            this.selector = null;
+        }
+
+        this.bufferSize = sizer.size();
+        this.pooledBuffer = bufferPool.acquire(bufferSize);
+        this.buffer = pooledBuffer.buffer();
+        buffer.flip();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!buffer.hasRemaining() && !fill(true))
+            return -1;
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0)
+            return 0;
+        if (!buffer.hasRemaining() && !fill(true))
+            return -1;
+        int amount = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, amount);
+        return amount;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0 || (!buffer.hasRemaining() && !fill(true)))
+            return 0;
+        int amount = (int) Math.min(n, buffer.remaining());
+        buffer.position(buffer.position() + amount);
+        return amount;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readLimit) {
+        mark = buffer.position();
+        markLimit = readLimit;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        if (mark < 0)
+            throw new IOException("Resetting to invalid mark");
+        buffer.position(mark);
+    }
+
+    /**
+     * Reads bytes, which have already been received by the kernel, if there are no buffered ones, without waiting for more.
+     *
+     * @return true if there are bytes to read.
+     */
+    boolean receiveNow() throws IOException {
+        return buffer.hasRemaining() || fill(false);
+    }
+
+    /**
+     * Closes the channel and returns receive buffer to the pool.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (selector != null) {
+                selector.close();
+            }
+            channel.close();
+        } finally {
+            pooledBuffer.close();
+        }
+    }
+
+    /**
+     * Reads at least one more byte from the channel.
+     *
+     * @param wait Whether to wait for the bytes, which have not been received yet.
+     * @return false if channel reached end of stream or nothing was received without waiting.
+     */
+    private boolean fill(boolean wait) throws IOException {
+        int marked = buffer.limit() - mark;
+        int kept = mark >= 0 && marked <= markLimit ? marked : 0;
+        mark = kept > 0 || mark == buffer.limit() ? 0 : -1;
+
+        buffer.position(buffer.limit() - kept);
+        if (sizer.size() != bufferSize && sizer.size() > kept) {
+            replaceBuffer();
+        } else if (kept < buffer.capacity()) {
+            buffer.compact();
+        } else {
+            //Marked bytes fill the whole buffer -> drop them.
+            buffer.clear();
+            mark = -1;
+            kept = 0;
+        }
+
+        int space = buffer.remaining();
+        int read = wait ? readChannel() : readReceived();
+        buffer.flip();
+        buffer.position(kept);
+        if (read <= 0)
+            return false;
+
+        //Read, which filled all the free space, may have found more bytes with larger buffer.
+        sizer.record(read == space ? sizer.size() : read);
+        metrics.bytesRead(read);
+        watchdog.bytesRead();
+        return true;
+    }
+
+    /**
+     * Moves kept bytes to a buffer of the size suggested by sizer, leaving it in write mode.
+     */
+    private void replaceBuffer() {
+        PooledBuffer replacement = bufferPool.acquire(sizer.size());
+        ByteBuffer replacementBuffer = replacement.buffer();
+        replacementBuffer.put(buffer);
+
+        pooledBuffer.close();
+        pooledBuffer = replacement;
+        buffer = replacementBuffer;
+        bufferSize = sizer.size();
+    }
+
+    private int readReceived() throws IOException {
+        if (selector != null)
+            return channel.read(buffer);
+
+        channel.configureBlocking(false);
+        try {
+            return channel.read(buffer);
+        } finally {
+            channel.configureBlocking(true);
+        }
+    }
+
+    private int readChannel() throws IOException {
+        if (selector == null)
+            return channel.read(buffer);
+
+        while (true) {
+            int read = channel.read(buffer);
+            if (read != 0)
+                return read;
+            if (selector.select(readTimeoutMillis) == 0) {
+                if (!channel.isOpen())
+                    throw new AsynchronousCloseException();
+                throw new SocketTimeoutException("No data received for " + readTimeoutMillis + " ms");
+            }
+            selector.selectedKeys().clear();
+        }
+    }
+}
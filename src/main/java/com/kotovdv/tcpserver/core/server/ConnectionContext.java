@@ -0,0 +1,79 @@
+package com.kotovdv.tcpserver.core.server;
+
+import com.kotovdv.tcpserver.core.buffer.BufferPool;
+import com.kotovdv.tcpserver.core.buffer.ReceiveBufferSize;
+import com.kotovdv.tcpserver.core.metrics.ConnectionMetrics;
+
+import java.util.Objects;
+
+/**
+ * Resources, which server provides to {@link SocketConnectionHandler} for a single connection.
+ */
+public final class ConnectionContext {
+
+    public static final int DEFAULT_RECEIVE_BUFFER_SIZE = 4096;
+    private static final BufferPool STANDALONE_BUFFER_POOL = new BufferPool();
+
+    private final ConnectionMetrics metrics;
+    private final BufferPool bufferPool;
+    private final ReceiveBufferSize receiveBufferSize;
+    private final ConnectionWatchdog watchdog;
+    private final Drain drain;
+
+    public ConnectionContext(ConnectionMetrics metrics, BufferPool bufferPool, ReceiveBufferSize receiveBufferSize) {
+        this(metrics, bufferPool, receiveBufferSize, ConnectionWatchdog.DISABLED);
+    }
+
+    public ConnectionContext(ConnectionMetrics metrics,
+                             BufferPool bufferPool,
+                             ReceiveBufferSize receiveBufferSize,
+                             ConnectionWatchdog watchdog) {
+        this(metrics, bufferPool, receiveBufferSize, watchdog, Drain.NONE);
+    }
+
+    /**
+     * @param metrics           Metrics of the connection.
+     * @param bufferPool        Pool, which receive buffers are borrowed from for the lifetime of the connection.
+     * @param receiveBufferSize Size of the receive buffer.
+     * @param watchdog          Watchdog, which has to be told about received bytes and messages.
+     * @param drain             Drain of the server, which has to be told about messages handled and dropped during it.
+     */
+    public ConnectionContext(ConnectionMetrics metrics,
+                             BufferPool bufferPool,
+                             ReceiveBufferSize receiveBufferSize,
+                             ConnectionWatchdog watchdog,
+                             Drain drain) {
+        this.metrics = Objects.requireNonNull(metrics, "Connection metrics can not be null");
+        this.bufferPool = Objects.requireNonNull(bufferPool, "Buffer pool can not be null");
+        this.receiveBufferSize = Objects.requireNonNull(receiveBufferSize, "Receive buffer size can not be null");
+        this.watchdog = Objects.requireNonNull(watchdog, "Connection watchdog can not be null");
+        this.drain = Objects.requireNonNull(drain, "Drain can not be null");
+    }
+
+    /**
+     * @return Context of connections handled without server: no metrics and buffers of the pool shared by all such connections.
+     */
+    public static ConnectionContext standalone() {
+        return new ConnectionContext(ConnectionMetrics.DISABLED, STANDALONE_BUFFER_POOL, ReceiveBufferSize.fixed(DEFAULT_RECEIVE_BUFFER_SIZE));
+    }
+
+    public ConnectionMetrics metrics() {
+        return metrics;
+    }
+
+    public BufferPool bufferPool() {
+        return bufferPool;
+    }
+
+    public ReceiveBufferSize receiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public ConnectionWatchdog watchdog() {
+        return watchdog;
+    }
+
+    public Drain drain() {
+        return drain;
+    }
+}
@@ -0,0 +1,111 @@
+package com.kotovdv.tcpserver.core.server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timeouts, after which {@link Server} closes connections of silent or too slow clients, freeing their workers.
+ * <p>
+ * Unlike read timeout of {@link SocketOptions} they are tracked by a single timing wheel of the server
+ * instead of each connection waiting on a timer of its own. Timeouts, which are not set, are disabled.
+ */
+public final class ConnectionTimeouts {
+
+    private static final long DEFAULT_TICK_MILLIS = 100;
+    private static final ConnectionTimeouts DISABLED = builder().build();
+
+    private final long idleTimeoutNanos;
+    private final long readTimeoutNanos;
+    private final long maxPartialFrameNanos;
+    private final long tickNanos;
+
+    private ConnectionTimeouts(Builder builder) {
+        this.idleTimeoutNanos = builder.idleTimeoutNanos;
+        this.readTimeoutNanos = builder.readTimeoutNanos;
+        this.maxPartialFrameNanos = builder.maxPartialFrameNanos;
+        this.tickNanos = builder.tickNanos;
+    }
+
+    public static ConnectionTimeouts disabled() {
+        return DISABLED;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public boolean isEnabled() {
+        return idleTimeoutNanos > 0 || readTimeoutNanos > 0 || maxPartialFrameNanos > 0;
+    }
+
+    public long idleTimeoutNanos() {
+        return idleTimeoutNanos;
+    }
+
+    public long readTimeoutNanos() {
+        return readTimeoutNanos;
+    }
+
+    public long maxPartialFrameNanos() {
+        return maxPartialFrameNanos;
+    }
+
+    public long tickNanos() {
+        return tickNanos;
+    }
+
+    public static final class Builder {
+
+        private long idleTimeoutNanos;
+        private long readTimeoutNanos;
+        private long maxPartialFrameNanos;
+        private long tickNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TICK_MILLIS);
+
+        private Builder() {
+        }
+
+        /**
+         * Max time without any bytes between messages.
+         */
+        public Builder idleTimeout(long timeout, TimeUnit unit) {
+            this.idleTimeoutNanos = toNanos("idle timeout", timeout, unit);
+            return this;
+        }
+
+        /**
+         * Max time without any bytes, while message is partially received.
+         */
+        public Builder readTimeout(long timeout, TimeUnit unit) {
+            this.readTimeoutNanos = toNanos("read timeout", timeout, unit);
+            return this;
+        }
+
+        /**
+         * Max time a single message may take to arrive, no matter how often its bytes trickle in.
+         */
+        public Builder maxPartialFrameTime(long time, TimeUnit unit) {
+            this.maxPartialFrameNanos = toNanos("max partial frame time", time, unit);
+            return this;
+        }
+
+        /**
+         * Precision of the timeouts, 100 milliseconds by default.
+         */
+        public Builder tickDuration(long duration, TimeUnit unit) {
+            long nanos = toNanos("tick duration", duration, unit);
+            if (nanos == 0)
+                throw new IllegalArgumentException("Illegal tick duration value " + duration + " " + unit);
+            this.tickNanos = nanos;
+            return this;
+        }
+
+        public ConnectionTimeouts build() {
+            return new ConnectionTimeouts(this);
+        }
+
+        private static long toNanos(String name, long value, TimeUnit unit) {
+            if (value < 0)
+                throw new IllegalArgumentException("Illegal " + name + " value " + value + " " + unit);
+            return unit.toNanos(value);
+        }
+    }
+}
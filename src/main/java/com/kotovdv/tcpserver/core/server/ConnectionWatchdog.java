@@ -0,0 +1,184 @@
+package com.kotovdv.tcpserver.core.server;
+
+import com.kotovdv.tcpserver.core.timer.TimingWheel;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closes connection, once client breaks one of the {@link ConnectionTimeouts}, which unblocks the thread reading it.
+ * <p>
+ * Reading thread only records timestamps of its reads. Timeout is not rescheduled on every read, instead
+ * it fires at the earliest possible deadline and either closes the connection or schedules itself for the new one.
+ */
+public final class ConnectionWatchdog implements Runnable {
+
+    private static final Logger log = LogManager.getLogger(ConnectionWatchdog.class);
+    private static final long NO_FRAME = Long.MIN_VALUE;
+
+    public static final ConnectionWatchdog DISABLED = new ConnectionWatchdog();
+
+    private final Socket socket;
+    private final ConnectionTimeouts timeouts;
+    private final TimingWheel wheel;
+
+    private volatile long lastReadNanos;
+    private volatile long frameStartNanos = NO_FRAME;
+    private volatile String expiredBy;
+    private volatile TimingWheel.Timeout timeout;
+    private volatile Runnable expiryAction;
+
+    private ConnectionWatchdog() {
+        this.socket = null;
+        this.timeouts = ConnectionTimeouts.disabled();
+        this.wheel = null;
+    }
+
+    private ConnectionWatchdog(Socket socket, ConnectionTimeouts timeouts, TimingWheel wheel) {
+        this.socket = socket;
+        this.timeouts = timeouts;
+        this.wheel = wheel;
+        this.lastReadNanos = System.nanoTime();
+    }
+
+    /**
+     * @return Started watchdog of the connection or {@link #DISABLED} if there are no timeouts.
+     */
+    static ConnectionWatchdog watch(Socket socket, ConnectionTimeouts timeouts, TimingWheel wheel) {
+        if (!timeouts.isEnabled())
+            return DISABLED;
+        ConnectionWatchdog watchdog = new ConnectionWatchdog(socket, timeouts, wheel);
+        watchdog.schedule(minTimeout(timeouts));
+        return watchdog;
+    }
+
+    public boolean isEnabled() {
+        return this != DISABLED;
+    }
+
+    /**
+     * Called by reading thread once some bytes are received.
+     */
+    public void bytesRead() {
+        if (!isEnabled())
+            return;
+        long now = System.nanoTime();
+        lastReadNanos = now;
+        if (frameStartNanos == NO_FRAME) {
+            frameStartNanos = now;
+        }
+    }
+
+    /**
+     * Called by reading thread once message is decoded.
+     *
+     * @param partial true if some bytes of the next message are already received.
+     */
+    public void messageRead(boolean partial) {
+        if (!isEnabled())
+            return;
+        frameStartNanos = partial ? lastReadNanos : NO_FRAME;
+    }
+
+    /**
+     * Sets action, which wakes up reading thread, if closing the socket does not, e.g. waiting on a selector.
+     */
+    void onExpiry(Runnable action) {
+        this.expiryAction = action;
+    }
+
+    /**
+     * @return Name of the timeout, which connection was closed by, or null.
+     */
+    public String expiredBy() {
+        return expiredBy;
+    }
+
+    /**
+     * Stops watching the connection.
+     */
+    public void close() {
+        TimingWheel.Timeout current = timeout;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    /**
+     * Checks the deadlines on the wheel thread.
+     */
+    @Override
+    public void run() {
+        if (socket.isClosed())
+            return;
+
+        long now = System.nanoTime();
+        long lastRead = lastReadNanos;
+        long frameStart = frameStartNanos;
+
+        //Deadlines are compared by difference, as nano time may overflow.
+        long delay = Long.MAX_VALUE;
+        if (frameStart == NO_FRAME) {
+            delay = remaining(delay, lastRead, timeouts.idleTimeoutNanos(), now);
+            if (delay <= 0) {
+                expire("idle timeout");
+                return;
+            }
+        } else {
+            delay = remaining(delay, lastRead, timeouts.readTimeoutNanos(), now);
+            if (delay <= 0) {
+                expire("read timeout");
+                return;
+            }
+            delay = remaining(delay, frameStart, timeouts.maxPartialFrameNanos(), now);
+            if (delay <= 0) {
+                expire("max partial frame time");
+                return;
+            }
+        }
+
+        //No timeout applies to the current state -> check again once some of them may.
+        schedule(delay == Long.MAX_VALUE ? minTimeout(timeouts) : delay);
+    }
+
+    private static long remaining(long delay, long since, long timeout, long now) {
+        if (timeout == 0)
+            return delay;
+        return Math.min(delay, since + timeout - now);
+    }
+
+    private void expire(String reason) {
+        expiredBy = reason;
+        log.info("Closing connection [{}] due to {}", socket.getRemoteSocketAddress(), reason);
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.error("Failed to close socket", e);
+        }
+        Runnable action = expiryAction;
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    private void schedule(long delayNanos) {
+        timeout = wheel.schedule(this, delayNanos, TimeUnit.NANOSECONDS);
+        //Connection may have been closed while the timeout was replaced.
+        if (socket.isClosed()) {
+            timeout.cancel();
+        }
+    }
+
+    private static long minTimeout(ConnectionTimeouts timeouts) {
+        long min = Long.MAX_VALUE;
+        for (long value : new long[]{timeouts.idleTimeoutNanos(), timeouts.readTimeoutNanos(), timeouts.maxPartialFrameNanos()}) {
+            if (value > 0) {
+                min = Math.min(min, value);
+            }
+        }
+        return min;
+    }
+}
@@ -0,0 +1,85 @@
+package com.kotovdv.tcpserver.core.server;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drain of the {@link Server}, shared by all of its connections.
+ * <p>
+ * Once started, connections finish messages, which have already been received, and close once they have no more
+ * received bytes. Connections waiting for the next message have nothing left to read, so drain wakes them up by shutting
+ * down their input.
+ */
+public final class Drain {
+
+    /**
+     * Drain of connections handled without server, which is never started.
+     */
+    public static final Drain NONE = new Drain();
+
+    private final LongAdder drainedMessages = new LongAdder();
+    private final LongAdder droppedMessages = new LongAdder();
+    private final Set<Socket> idleConnections = ConcurrentHashMap.newKeySet();
+    private volatile boolean started;
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    void start() {
+        started = true;
+        for (Socket connection : idleConnections) {
+            if (idleConnections.remove(connection)) {
+                shutdownInput(connection);
+            }
+        }
+    }
+
+    /**
+     * Called before connection starts waiting for the next message, so that drain can wake it up.
+     * Connection has to check, whether drain was started, once it is called.
+     */
+    void idle(Socket connection) {
+        if (this != NONE) {
+            idleConnections.add(connection);
+        }
+    }
+
+    /**
+     * Called once connection stops waiting for the next message.
+     *
+     * @return false if drain has shut down input of the connection to wake it up.
+     */
+    boolean busy(Socket connection) {
+        return this == NONE || idleConnections.remove(connection);
+    }
+
+    /**
+     * Called for message handled after drain was started.
+     */
+    void messageDrained() {
+        drainedMessages.increment();
+    }
+
+    /**
+     * Called for message, which was not received completely before drain, or was left unhandled once it timed out.
+     */
+    void messageDropped() {
+        droppedMessages.increment();
+    }
+
+    DrainReport report(int abortedConnections) {
+        return new DrainReport(drainedMessages.sum(), droppedMessages.sum(), abortedConnections);
+    }
+
+    private static void shutdownInput(Socket connection) {
+        try {
+            connection.shutdownInput();
+        } catch (IOException e) {
+            //Connection is already closed or its input is already shut down.
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.kotovdv.tcpserver.core.server;
+
+/**
+ * Outcome of {@link Server#drainAndStop(long, java.util.concurrent.TimeUnit)}.
+ */
+public final class DrainReport {
+
+    private final long drainedMessages;
+    private final long droppedMessages;
+    private final int abortedConnections;
+
+    DrainReport(long drainedMessages, long droppedMessages, int abortedConnections) {
+        this.drainedMessages = drainedMessages;
+        this.droppedMessages = droppedMessages;
+        this.abortedConnections = abortedConnections;
+    }
+
+    /**
+     * @return Amount of messages received before drain and handled after it was started.
+     */
+    public long drainedMessages() {
+        return drainedMessages;
+    }
+
+    /**
+     * @return Amount of partially received messages discarded by drain.
+     * Each connection aborted with unhandled bytes counts as a single message, so it is a lower bound.
+     */
+    public long droppedMessages() {
+        return droppedMessages;
+    }
+
+    /**
+     * @return Amount of connections, which did not finish before drain timed out.
+     */
+    public int abortedConnections() {
+        return abortedConnections;
+    }
+
+    @Override
+    public String toString() {
+        return "DrainReport{" +
+                "drainedMessages=" + drainedMessages +
+                ", droppedMessages=" + droppedMessages +
+                ", abortedConnections=" + abortedConnections +
+                '}';
+    }
+}
@@ -0,0 +1,42 @@
+package com.kotovdv.tcpserver.core.server;
+
+import com.kotovdv.tcpserver.core.metrics.ConnectionMetrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reports amount of bytes read from the socket stream to connection metrics and watchdog.
+ */
+class MeteredInputStream extends FilterInputStream {
+
+    private final ConnectionMetrics metrics;
+    private final ConnectionWatchdog watchdog;
+
+    MeteredInputStream(InputStream in, ConnectionMetrics metrics, ConnectionWatchdog watchdog) {
+        super(in);
+        this.metrics = metrics;
+        this.watchdog = watchdog;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value >= 0) {
+            metrics.bytesRead(1);
+            watchdog.bytesRead();
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        int read = super.read(bytes, offset, length);
+        if (read > 0) {
+            metrics.bytesRead(read);
+            watchdog.bytesRead();
+        }
+        return read;
+    }
+}
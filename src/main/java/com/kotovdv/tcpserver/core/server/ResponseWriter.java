@@ -0,0 +1,63 @@
+package com.kotovdv.tcpserver.core.server;
+
+import com.kotovdv.tcpserver.core.message.DuplexMessageHandler;
+import com.kotovdv.tcpserver.core.message.MessageHandler;
+import com.kotovdv.tcpserver.core.message.MessageSerializer;
+import com.kotovdv.tcpserver.core.message.MessageWriter;
+
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Write path of a single connection, which passes messages to {@link DuplexMessageHandler} and writes its responses back.
+ * <p>
+ * Responses are encoded as they are returned, but written only on {@link #flush()}, so responses to pipelined messages
+ * received with the same read are coalesced into a single write. Once the client reads its responses slower than
+ * it sends messages, flush blocks, which stops reading of the connection, so pending bytes never exceed the configured
+ * limit and the client is slowed down by TCP flow control.
+ * Not thread safe, single instance is used by one connection.
+ */
+final class ResponseWriter<T, R> implements MessageHandler<T>, AutoCloseable {
+
+    private final DuplexMessageHandler<T, R> handler;
+    private final SocketWriteChannel channel;
+    private final MessageWriter<R> writer;
+    private final int maxPendingBytes;
+
+    ResponseWriter(DuplexMessageHandler<T, R> handler,
+                   MessageSerializer<R> serializer,
+                   Socket socket,
+                   int maxPendingBytes) throws IOException {
+        this.handler = handler;
+        this.channel = new SocketWriteChannel(socket);
+        this.writer = new MessageWriter<>(serializer, channel, maxPendingBytes);
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    @Override
+    public void handle(T message) {
+        R response = handler.handle(message);
+        if (response != null) {
+            writer.add(response);
+        }
+    }
+
+    /**
+     * @return true if encoded responses reached the pending bytes limit and have to be flushed before reading on.
+     */
+    boolean isFull() {
+        return writer.pendingBytes() >= maxPendingBytes;
+    }
+
+    /**
+     * Writes all the pending responses, blocking until socket accepts them.
+     */
+    void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -1,31 +1,48 @@
 package com.kotovdv.tcpserver.core.server;
 
+import com.kotovdv.tcpserver.core.buffer.BufferPool;
+import com.kotovdv.tcpserver.core.buffer.ReceiveBufferSize;
 import com.kotovdv.tcpserver.core.exception.TCPServerException;
+import com.kotovdv.tcpserver.core.metrics.ServerMetrics;
+import com.kotovdv.tcpserver.core.timer.TimingWheel;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 public class Server {
 
     private static final Logger log = LogManager.getLogger(Server.class);
+    private static final int TIMING_WHEEL_SIZE = 512;
 
     private final int serverPort;
     private final int socketBacklog;
     private final int maxConnections;
+    private final boolean virtualThreads;
+    private final int acceptors;
+    private final AdmissionControl admissionControl;
     private final SocketConnectionHandler<?> handler;
-    private final SocketConnectionDispatcher dispatcher = new SocketConnectionDispatcher();
+    private final SocketOptions socketOptions;
+    private final TimingWheel timingWheel;
+    private final SocketConnectionDispatcher dispatcher;
     private final Object lock = new Object();
 
     private volatile boolean started;
     private ExecutorService executor;
-    private ServerSocket serverSocket;
+    private final List<ServerSocket> serverSockets = new ArrayList<>();
 
     public Server(int port,
                   int maxConnections,
@@ -37,19 +54,52 @@ public class Server {
                   int socketBacklog,
                   int maxConnections,
                   SocketConnectionHandler<?> handler) {
-        if (port < 0 || port > 65535)
-            throw new IllegalArgumentException("Illegal port value " + port);
-        this.serverPort = port;
+        this(builder(port, maxConnections, handler).socketBacklog(socketBacklog));
+    }
+
+    private Server(Builder builder) {
+        if (builder.port < 0 || builder.port > 65535)
+            throw new IllegalArgumentException("Illegal port value " + builder.port);
+        this.serverPort = builder.port;
+
+        if (builder.socketBacklog < 0)
+            throw new IllegalArgumentException("Illegal socket backlog value " + builder.socketBacklog);
+        this.socketBacklog = builder.socketBacklog;
+
+        if (builder.maxConnections < 1)
+            throw new IllegalArgumentException("Illegal max connections value " + builder.maxConnections);
+        this.maxConnections = builder.maxConnections;
+
+        this.virtualThreads = builder.virtualThreads;
 
-        if (socketBacklog < 0)
-            throw new IllegalArgumentException("Illegal socket backlog value " + socketBacklog);
-        this.socketBacklog = socketBacklog;
+        if (builder.acceptors < 1)
+            throw new IllegalArgumentException("Illegal acceptors value " + builder.acceptors);
+        this.acceptors = builder.acceptors;
 
-        if (maxConnections < 1)
-            throw new IllegalArgumentException("Illegal max connections value " + maxConnections);
-        this.maxConnections = maxConnections;
+        this.admissionControl = Objects.requireNonNull(builder.admissionControl, "Admission control can not be null");
+        this.handler = Objects.requireNonNull(builder.handler, "Socket connection handler can not be null");
+        this.socketOptions = Objects.requireNonNull(builder.socketOptions, "Socket options can not be null");
 
-        this.handler = Objects.requireNonNull(handler, "Socket connection handler can not be null");
+        ConnectionTimeouts timeouts = Objects.requireNonNull(builder.timeouts, "Connection timeouts can not be null");
+        this.timingWheel = timeouts.isEnabled()
+                ? new TimingWheel(timeouts.tickNanos(), TimeUnit.NANOSECONDS, TIMING_WHEEL_SIZE, "connection-timeouts")
+                : null;
+        this.dispatcher = new SocketConnectionDispatcher(
+                Objects.requireNonNull(builder.metrics, "Server metrics can not be null"),
+                socketOptions,
+                builder.bufferPool != null ? builder.bufferPool : new BufferPool(),
+                Objects.requireNonNull(builder.receiveBufferSize, "Receive buffer size can not be null"),
+                maxConnections,
+                admissionControl,
+                timeouts,
+                timingWheel
+        );
+    }
+
+    public static Builder builder(int port,
+                                  int maxConnections,
+                                  SocketConnectionHandler<?> handler) {
+        return new Builder(port, maxConnections, handler);
     }
 
     public void start() {
@@ -74,25 +124,61 @@ public class Server {
         }
     }
 
+    /**
+     * Stops the server without losing messages, which have already been received.
+     * <p>
+     * Server stops accepting connections, and each of the accepted ones handles the rest of its received bytes
+     * and closes at a message boundary. Connections still running after the timeout are aborted.
+     *
+     * @return Amounts of drained and dropped messages.
+     */
+    public DrainReport drainAndStop(long timeout, TimeUnit unit) {
+        if (!started)
+            return new DrainReport(0, 0, 0);
+        synchronized (lock) {
+            if (!started)
+                return new DrainReport(0, 0, 0);
+            DrainReport report = doDrain(timeout, unit);
+            started = false;
+            return report;
+        }
+    }
+
     private void doStart() {
         log.info("Attempting to start TCP Server on port [{}]", serverPort);
 
         try {
-            this.serverSocket = new ServerSocket(serverPort, socketBacklog);
+            openServerSockets();
         } catch (IOException e) {
+            closeServerSockets();
             throw new TCPServerException("Failed to open server socket at port: " + serverPort, e);
         }
 
-        log.info("Server socket initialized");
+        log.info("[{}] server sockets initialized", serverSockets.size());
 
-        this.executor = new ThreadPoolExecutor(
-                maxConnections + 1, maxConnections + 1,
-                0, TimeUnit.MILLISECONDS,
-                new LinkedBlockingQueue<>(),
-                new ThreadPoolExecutor.AbortPolicy()
-        );
+        if (timingWheel != null) {
+            timingWheel.start();
+        }
 
-        this.executor.execute(() -> dispatcher.dispatch(serverSocket, executor, handler));
+        if (virtualThreads) {
+            //Each connection gets its own virtual thread, so capacity is limited by permits instead of pool size.
+            Semaphore permits = new Semaphore(maxConnections);
+            this.executor = Executors.newVirtualThreadPerTaskExecutor();
+            for (ServerSocket serverSocket : serverSockets) {
+                this.executor.execute(() -> dispatcher.dispatch(serverSocket, executor, handler, permits));
+            }
+        } else {
+            this.executor = new ThreadPoolExecutor(
+                    maxConnections + serverSockets.size(), maxConnections + serverSockets.size(),
+                    0, TimeUnit.MILLISECONDS,
+                    //Dispatcher admits no more than max pending connections to the queue, the bound is only a safety net.
+                    new LinkedBlockingQueue<>((int) Math.min(Integer.MAX_VALUE, (long) maxConnections + admissionControl.maxPendingConnections())),
+                    new ThreadPoolExecutor.AbortPolicy()
+            );
+            for (ServerSocket serverSocket : serverSockets) {
+                this.executor.execute(() -> dispatcher.dispatch(serverSocket, executor, handler));
+            }
+        }
         log.info("Workers initialized");
 
         log.info("Server started");
@@ -108,15 +194,181 @@ public class Server {
             Thread.currentThread().interrupt();
         }
 
-        log.info("Shutting down server socket");
+        log.info("Shutting down server sockets");
+        closeServerSockets();
+
+        if (timingWheel != null) {
+            timingWheel.stop();
+        }
+
+        log.info("Server stopped");
+    }
+
+    private DrainReport doDrain(long timeout, TimeUnit unit) {
+        log.info("Attempting to drain TCP Server");
+        log.info("Shutting down server sockets");
+        closeServerSockets();
+
+        log.info("Draining connections");
+        Drain drain = dispatcher.startDrain();
+        executor.shutdown();
+        int aborted = 0;
         try {
-            if (serverSocket != null) {
+            if (!executor.awaitTermination(timeout, unit)) {
+                aborted = dispatcher.abortDrain();
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            aborted = dispatcher.abortDrain();
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        DrainReport report = drain.report(aborted);
+        dispatcher.resetDrain();
+
+        if (timingWheel != null) {
+            timingWheel.stop();
+        }
+
+        log.info("Server drained: {}", report);
+        return report;
+    }
+
+    /**
+     * Opens a listening socket per acceptor. Several sockets can listen on the same port only with SO_REUSEPORT,
+     * in which case kernel balances incoming connections between them.
+     */
+    private void openServerSockets() throws IOException {
+        int port = serverPort;
+        for (int i = 0; i < acceptors; i++) {
+            //Sockets accepted by channel can be read straight into direct buffers.
+            ServerSocketChannel serverChannel = ServerSocketChannel.open();
+            serverSockets.add(serverChannel.socket());
+            socketOptions.applyTo(serverChannel.socket());
+
+            boolean reusePort = acceptors > 1 && serverChannel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+            if (reusePort) {
+                serverChannel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            serverChannel.bind(new InetSocketAddress(port), socketBacklog);
+            if (acceptors > 1 && !reusePort) {
+                log.warn("SO_REUSEPORT is not supported, falling back to single acceptor");
+                return;
+            }
+            //Ephemeral port is chosen by the first socket, the rest have to share it.
+            port = serverChannel.socket().getLocalPort();
+        }
+    }
+
+    private void closeServerSockets() {
+        for (ServerSocket serverSocket : serverSockets) {
+            try {
                 serverSocket.close();
+            } catch (IOException e) {
+                log.error("Failed to close server socket", e);
             }
-        } catch (IOException e) {
-            log.error("Failed to close server socket", e);
+        }
+        serverSockets.clear();
+    }
+
+    public static final class Builder {
+
+        private final int port;
+        private final int maxConnections;
+        private final SocketConnectionHandler<?> handler;
+        private int socketBacklog;
+        private boolean virtualThreads;
+        private ServerMetrics metrics = ServerMetrics.DISABLED;
+        private BufferPool bufferPool;
+        private ReceiveBufferSize receiveBufferSize = ReceiveBufferSize.fixed(ConnectionContext.DEFAULT_RECEIVE_BUFFER_SIZE);
+        private SocketOptions socketOptions = SocketOptions.defaults();
+        private int acceptors = 1;
+        private AdmissionControl admissionControl = AdmissionControl.defaults();
+        private ConnectionTimeouts timeouts = ConnectionTimeouts.disabled();
+
+        private Builder(int port,
+                        int maxConnections,
+                        SocketConnectionHandler<?> handler) {
+            this.port = port;
+            this.maxConnections = maxConnections;
+            this.handler = handler;
+            this.socketBacklog = maxConnections;
         }
 
-        log.info("Server stopped");
+        public Builder socketBacklog(int socketBacklog) {
+            this.socketBacklog = socketBacklog;
+            return this;
+        }
+
+        /**
+         * Run every connection on its own virtual thread instead of the fixed pool of platform threads.
+         */
+        public Builder virtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        /**
+         * Report connections to the given metrics, e.g. {@link com.kotovdv.tcpserver.core.metrics.MetricsRegistry}.
+         * Metrics are disabled by default.
+         */
+        public Builder metrics(ServerMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Pool, which connections borrow their receive buffers from. By default each server has its own pool.
+         */
+        public Builder bufferPool(BufferPool bufferPool) {
+            this.bufferPool = bufferPool;
+            return this;
+        }
+
+        public Builder receiveBufferSize(int receiveBufferSize) {
+            return receiveBufferSize(ReceiveBufferSize.fixed(receiveBufferSize));
+        }
+
+        /**
+         * Size of the receive buffers of each connection, e.g. {@link ReceiveBufferSize#adaptive(int, int, int)}.
+         */
+        public Builder receiveBufferSize(ReceiveBufferSize receiveBufferSize) {
+            this.receiveBufferSize = receiveBufferSize;
+            return this;
+        }
+
+        public Builder socketOptions(SocketOptions socketOptions) {
+            this.socketOptions = socketOptions;
+            return this;
+        }
+
+        /**
+         * Amount of listening sockets sharing the port through SO_REUSEPORT, each accepting connections on its own thread.
+         * Falls back to a single socket where SO_REUSEPORT is not supported.
+         */
+        public Builder acceptors(int acceptors) {
+            this.acceptors = acceptors;
+            return this;
+        }
+
+        /**
+         * What to do with connections above max connections. By default they are rejected right after accept.
+         */
+        public Builder admissionControl(AdmissionControl admissionControl) {
+            this.admissionControl = admissionControl;
+            return this;
+        }
+
+        /**
+         * Timeouts closing connections of silent and too slow clients. Disabled by default.
+         */
+        public Builder timeouts(ConnectionTimeouts timeouts) {
+            this.timeouts = timeouts;
+            return this;
+        }
+
+        public Server build() {
+            return new Server(this);
+        }
     }
 }
@@ -1,13 +1,23 @@
 package com.kotovdv.tcpserver.core.server;
 
+import com.kotovdv.tcpserver.core.buffer.BufferPool;
+import com.kotovdv.tcpserver.core.buffer.ReceiveBufferSize;
+import com.kotovdv.tcpserver.core.metrics.ConnectionMetrics;
+import com.kotovdv.tcpserver.core.metrics.ServerMetrics;
+import com.kotovdv.tcpserver.core.timer.TimingWheel;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Dispatches incoming socket connections to available threads for handling.
@@ -16,39 +26,238 @@ public class SocketConnectionDispatcher {
 
     private static final Logger log = LogManager.getLogger(SocketConnectionDispatcher.class);
 
+    private final ServerMetrics metrics;
+    private final SocketOptions socketOptions;
+    private final BufferPool bufferPool;
+    private final ReceiveBufferSize receiveBufferSize;
+    private final int maxConnections;
+    private final AdmissionControl admissionControl;
+    private final ConnectionTimeouts timeouts;
+    private final TimingWheel timingWheel;
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private volatile Drain drain = new Drain();
+
+    public SocketConnectionDispatcher() {
+        this(
+                ServerMetrics.DISABLED,
+                SocketOptions.defaults(),
+                new BufferPool(),
+                ReceiveBufferSize.fixed(ConnectionContext.DEFAULT_RECEIVE_BUFFER_SIZE),
+                Integer.MAX_VALUE,
+                AdmissionControl.defaults(),
+                ConnectionTimeouts.disabled(),
+                null
+        );
+    }
+
+    /**
+     * @param metrics           Metrics of accepted and rejected connections.
+     * @param socketOptions     Options applied to accepted sockets by the thread handling them.
+     * @param bufferPool        Pool of receive buffers of accepted connections.
+     * @param receiveBufferSize Size of the receive buffers of each connection.
+     * @param maxConnections    Amount of connections handled simultaneously, the rest are pending.
+     * @param admissionControl  Limits of pending connections and load.
+     * @param timeouts          Timeouts of accepted connections.
+     * @param timingWheel       Wheel tracking the timeouts, may be null if they are disabled.
+     */
+    public SocketConnectionDispatcher(ServerMetrics metrics,
+                                      SocketOptions socketOptions,
+                                      BufferPool bufferPool,
+                                      ReceiveBufferSize receiveBufferSize,
+                                      int maxConnections,
+                                      AdmissionControl admissionControl,
+                                      ConnectionTimeouts timeouts,
+                                      TimingWheel timingWheel) {
+        if (timeouts.isEnabled() && timingWheel == null)
+            throw new IllegalArgumentException("Timing wheel is required for connection timeouts");
+        this.metrics = metrics;
+        this.socketOptions = socketOptions;
+        this.bufferPool = bufferPool;
+        this.receiveBufferSize = receiveBufferSize;
+        this.maxConnections = maxConnections;
+        this.admissionControl = admissionControl;
+        this.timeouts = timeouts;
+        this.timingWheel = timingWheel;
+    }
+
     public void dispatch(ServerSocket serverSocket,
                          ExecutorService executor,
                          SocketConnectionHandler<?> connectionHandler) {
+        dispatch(serverSocket, executor, connectionHandler, null);
+    }
+
+    /**
+     * @param permits Permits limiting amount of simultaneously handled connections, pending connections wait for them.
+     *                If null, pending connections are expected to wait in the queue of the executor.
+     */
+    public void dispatch(ServerSocket serverSocket,
+                         ExecutorService executor,
+                         SocketConnectionHandler<?> connectionHandler,
+                         Semaphore permits) {
 
         Socket socket = null;
 
         while (!Thread.currentThread().isInterrupted()) {
             try {
+                if (admissionControl.acceptPauseNanos() > 0 && !hasCapacity()) {
+                    //Connections stay in the kernel backlog until some of the admitted ones are finished.
+                    pauseAccepting();
+                    continue;
+                }
                 socket = serverSocket.accept();
-                submit(socket, executor, connectionHandler);
+                admit(socket, executor, connectionHandler, permits);
             } catch (RejectedExecutionException e) {
-                handleServerCapacityExceeded(socket);
+                metrics.connectionRejected();
+                handleServerCapacityExceeded(socket, e.getMessage());
             } catch (IOException e) {
-                log.error("Failed to accept client connection", e);
+                if (!serverSocket.isClosed()) {
+                    log.error("Failed to accept client connection", e);
+                }
                 return;
             }
         }
     }
 
-    private void submit(Socket connection,
-                        ExecutorService executor,
-                        SocketConnectionHandler<?> connectionHandler) {
-        executor.execute(() -> connectionHandler.handle(connection));
+    private void admit(Socket connection,
+                       ExecutorService executor,
+                       SocketConnectionHandler<?> connectionHandler,
+                       Semaphore permits) {
+        if (admissionControl.isOverloaded())
+            throw new RejectedExecutionException("Server is overloaded");
+
+        int before = admitted.getAndIncrement();
+        if (before >= (long) maxConnections + admissionControl.maxPendingConnections()) {
+            admitted.decrementAndGet();
+            throw new RejectedExecutionException("Max connections and max pending connections reached");
+        }
+
+        boolean queued = before >= maxConnections;
+        if (queued) {
+            metrics.connectionQueued();
+        }
+        try {
+            executor.execute(() -> run(connection, connectionHandler, permits, queued));
+        } catch (RejectedExecutionException e) {
+            if (queued) {
+                metrics.connectionDequeued();
+            }
+            admitted.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void run(Socket connection,
+                     SocketConnectionHandler<?> connectionHandler,
+                     Semaphore permits,
+                     boolean queued) {
+        boolean permitted = false;
+        try {
+            if (permits != null) {
+                permits.acquire();
+                permitted = true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (queued) {
+                metrics.connectionDequeued();
+            }
+        }
+
+        try {
+            if (permits == null || permitted) {
+                handle(connection, connectionHandler);
+            } else {
+                close(connection);
+            }
+        } finally {
+            if (permitted) {
+                permits.release();
+            }
+            admitted.decrementAndGet();
+        }
+    }
+
+    private boolean hasCapacity() {
+        return admitted.get() < (long) maxConnections + admissionControl.maxPendingConnections();
+    }
+
+    private void pauseAccepting() {
+        try {
+            TimeUnit.NANOSECONDS.sleep(admissionControl.acceptPauseNanos());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
-    private void handleServerCapacityExceeded(Socket socket) {
-        log.error("Capacity exceeded, connection aborted");
-        if (socket != null && !socket.isClosed()) {
+    private void handle(Socket connection,
+                        SocketConnectionHandler<?> connectionHandler) {
+        connections.add(connection);
+        try {
+            ConnectionMetrics connectionMetrics = metrics.connectionAccepted(connection.getRemoteSocketAddress());
             try {
-                socket.close();
+                socketOptions.applyTo(connection);
             } catch (IOException e) {
-                log.error("Failed to close socket", e);
+                log.error("Failed to configure client connection", e);
+                connectionMetrics.close();
+                close(connection);
+                return;
             }
+
+            ConnectionWatchdog watchdog = ConnectionWatchdog.watch(connection, timeouts, timingWheel);
+            connectionHandler.handle(connection, new ConnectionContext(connectionMetrics, bufferPool, receiveBufferSize, watchdog, drain));
+        } finally {
+            connections.remove(connection);
+        }
+    }
+
+    /**
+     * Starts drain of all the connections, including pending ones, so their handlers finish messages,
+     * which have already been received, and stop.
+     */
+    Drain startDrain() {
+        Drain current = drain;
+        current.start();
+        return current;
+    }
+
+    /**
+     * Closes connections, which have not finished draining.
+     *
+     * @return Amount of closed connections.
+     */
+    int abortDrain() {
+        int aborted = 0;
+        for (Socket connection : connections) {
+            drain.messageDropped();
+            close(connection);
+            aborted++;
+        }
+        return aborted;
+    }
+
+    /**
+     * Prepares dispatcher for connections of the next start.
+     */
+    void resetDrain() {
+        drain = new Drain();
+    }
+
+    private void handleServerCapacityExceeded(Socket socket, String reason) {
+        log.error("{}, connection aborted", reason);
+        if (socket != null) {
+            close(socket);
+        }
+    }
+
+    private void close(Socket socket) {
+        if (socket.isClosed())
+            return;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            log.error("Failed to close socket", e);
         }
     }
 }
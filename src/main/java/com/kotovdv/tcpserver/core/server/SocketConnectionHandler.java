@@ -1,62 +1,303 @@
 package com.kotovdv.tcpserver.core.server;
 
 import com.kotovdv.tcpserver.core.exception.TCPServerException;
+import com.kotovdv.tcpserver.core.message.DuplexMessageHandler;
+import com.kotovdv.tcpserver.core.message.MessageBatcher;
 import com.kotovdv.tcpserver.core.message.MessageDeserializer;
 import com.kotovdv.tcpserver.core.message.MessageHandler;
+import com.kotovdv.tcpserver.core.message.MessageSerializer;
+import com.kotovdv.tcpserver.core.metrics.ConnectionMetrics;
+import com.kotovdv.tcpserver.core.ratelimit.RateLimiter;
+import com.kotovdv.tcpserver.core.ratelimit.TokenBucket;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.Socket;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public class SocketConnectionHandler<T> {
 
-    private static final int BUFFER_SIZE = 4096;
     private static final Logger log = LogManager.getLogger(SocketConnectionHandler.class);
 
+    public static final int DEFAULT_MAX_PENDING_RESPONSE_BYTES = 64 * 1024;
+
     private final MessageHandler<T> handler;
+    private final Function<Socket, ResponseWriter<T, ?>> responseWriters;
     private final MessageDeserializer<T> deserializer;
+    private final int maxBatchSize;
+    private final long maxLinger;
+    private final TimeUnit lingerUnit;
+    private final RateLimiter<? super T> rateLimiter;
 
     public SocketConnectionHandler(MessageHandler<T> handler,
                                    MessageDeserializer<T> deserializer) {
+        this(handler, deserializer, 1, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates handler, which passes messages to {@link com.kotovdv.tcpserver.core.message.BatchMessageHandler}
+     * in batches of up to maxBatchSize messages read from the same buffer fill.
+     */
+    public SocketConnectionHandler(MessageHandler<T> handler,
+                                   MessageDeserializer<T> deserializer,
+                                   int maxBatchSize,
+                                   long maxLinger,
+                                   TimeUnit unit) {
+        if (maxBatchSize < 1)
+            throw new IllegalArgumentException("Illegal max batch size value " + maxBatchSize);
+        if (maxLinger < 0)
+            throw new IllegalArgumentException("Illegal max linger value " + maxLinger);
+
         this.handler = handler;
+        this.responseWriters = null;
+        this.deserializer = deserializer;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLinger = maxLinger;
+        this.lingerUnit = Objects.requireNonNull(unit, "Linger unit can not be null");
+        this.rateLimiter = null;
+    }
+
+    public <R> SocketConnectionHandler(DuplexMessageHandler<T, R> handler,
+                                       MessageDeserializer<T> deserializer,
+                                       MessageSerializer<R> serializer) {
+        this(handler, deserializer, serializer, DEFAULT_MAX_PENDING_RESPONSE_BYTES);
+    }
+
+    /**
+     * Creates handler, which writes responses of the duplex handler back on the connection.
+     * <p>
+     * Responses to the messages received with the same read are written together once there are no more received bytes
+     * to decode or once they take max pending response bytes.
+     */
+    public <R> SocketConnectionHandler(DuplexMessageHandler<T, R> handler,
+                                       MessageDeserializer<T> deserializer,
+                                       MessageSerializer<R> serializer,
+                                       int maxPendingResponseBytes) {
+        if (maxPendingResponseBytes < 1)
+            throw new IllegalArgumentException("Illegal max pending response bytes value " + maxPendingResponseBytes);
+
+        this.handler = null;
+        this.responseWriters = socket -> {
+            try {
+                return new ResponseWriter<>(handler, serializer, socket, maxPendingResponseBytes);
+            } catch (IOException e) {
+                throw new TCPServerException("Failed to acquire output stream from the socket", e);
+            }
+        };
         this.deserializer = deserializer;
+        this.maxBatchSize = 1;
+        this.maxLinger = 0;
+        this.lingerUnit = TimeUnit.MILLISECONDS;
+        this.rateLimiter = null;
+    }
+
+    private SocketConnectionHandler(SocketConnectionHandler<T> source, RateLimiter<? super T> rateLimiter) {
+        this.handler = source.handler;
+        this.responseWriters = source.responseWriters;
+        this.deserializer = source.deserializer;
+        this.maxBatchSize = source.maxBatchSize;
+        this.maxLinger = source.maxLinger;
+        this.lingerUnit = source.lingerUnit;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * @return Handler, which passes on only messages within the limits of the rate limiter.
+     * With {@link com.kotovdv.tcpserver.core.ratelimit.RateLimitPolicy#DELAY} connection is not read while its message
+     * waits for tokens, so the client is slowed down by TCP flow control.
+     */
+    public SocketConnectionHandler<T> rateLimited(RateLimiter<? super T> rateLimiter) {
+        return new SocketConnectionHandler<>(this, Objects.requireNonNull(rateLimiter, "Rate limiter can not be null"));
     }
 
     public void handle(Socket socket) {
-        try (DataInputStream in = getInputStream(socket)) {
+        handle(socket, ConnectionContext.standalone());
+    }
+
+    /**
+     * Handles connection and reports its bytes, messages and handler latencies to the metrics of the context.
+     * <p>
+     * Sockets backed by a channel are read straight into direct receive buffers borrowed from the pool of the context,
+     * which are returned once the connection is closed.
+     * <p>
+     * Once drain is started, connection keeps reading and closes at a message boundary once it has no more received bytes,
+     * so messages, which have already been received, are still handled and answered.
+     */
+    public void handle(Socket socket, ConnectionContext context) {
+        ConnectionMetrics metrics = context.metrics();
+        ConnectionWatchdog watchdog = context.watchdog();
+        Drain drain = context.drain();
+        TokenBucket connectionBucket = rateLimiter == null ? null : rateLimiter.newConnectionBucket();
+        ResponseWriter<T, ?> responses = null;
+        MessageBatcher<T> batcher = null;
+
+        try (InputStream source = getInputStream(socket, context)) {
+            DataInputStream in = new DataInputStream(source);
+            responses = responseWriters == null ? null : responseWriters.apply(socket);
+            batcher = new MessageBatcher<>(
+                    metrics.measure(responses == null ? handler : responses),
+                    maxBatchSize,
+                    maxLinger,
+                    lingerUnit
+            );
+            boolean partial = false;
             while (!Thread.currentThread().isInterrupted()) {
-                Optional<T> request = deserializer.readNext(in);
-                if (!request.isPresent())
+                Optional<T> request = partial || awaitMessage(socket, source, in, drain)
+                        ? read(in, metrics)
+                        : Optional.empty();
+                if (!request.isPresent()) {
+                    batcher.flush();
+                    if (responses != null) {
+                        responses.flush();
+                    }
                     return;
+                }
 
-                handler.handle(request.get());
+                if (rateLimiter == null || rateLimiter.acquire(request.get(), connectionBucket)) {
+                    batcher.add(request.get());
+                    if (drain.isStarted()) {
+                        drain.messageDrained();
+                    }
+                }
+                partial = in.available() > 0;
+                watchdog.messageRead(partial);
+                //Next read is going to block -> deliver everything received so far.
+                if (!partial) {
+                    batcher.flush();
+                }
+                if (responses != null && (!partial || responses.isFull())) {
+                    responses.flush();
+                }
             }
         } catch (IOException e) {
-            log.error("Failed to handle socket connection", e);
+            if (batcher != null) {
+                batcher.flush();
+            }
+            if (drain.isStarted()) {
+                flushQuietly(responses);
+                //Connections closed by aborted drain are already counted.
+                if (!socket.isClosed()) {
+                    drain.messageDropped();
+                }
+                log.debug("Incomplete message dropped by drain");
+            } else if (watchdog.expiredBy() != null) {
+                log.debug("Connection closed due to {}", watchdog.expiredBy());
+            } else {
+                log.error("Failed to handle socket connection", e);
+            }
         } finally {
+            metrics.close();
+            watchdog.close();
+            close(responses);
             close(socket);
         }
     }
 
-    private DataInputStream getInputStream(Socket socket) {
+    /**
+     * Waits for the first byte of the next message. Once drain is started, only bytes already received by the kernel are read.
+     *
+     * @return false if there is nothing more to read.
+     */
+    private boolean awaitMessage(Socket socket, InputStream source, DataInputStream in, Drain drain) throws IOException {
+        if (!drain.isStarted()) {
+            drain.idle(socket);
+            try {
+                if (!drain.isStarted()) {
+                    in.mark(1);
+                    if (in.read() < 0)
+                        return false;
+                    in.reset();
+                    return true;
+                }
+            } finally {
+                drain.busy(socket);
+            }
+        }
+        if (source instanceof ChannelInputStream)
+            return ((ChannelInputStream) source).receiveNow();
+        //Socket stream counts bytes received by the kernel as available.
+        return source.available() > 0;
+    }
+
+    private Optional<T> read(DataInputStream in, ConnectionMetrics metrics) throws IOException {
+        if (!metrics.isEnabled())
+            return deserializer.readNext(in);
+
+        //Waiting for the client is not decoding -> time only messages, which start in already received bytes.
+        long start = in.available() > 0 ? System.nanoTime() : -1;
+        Optional<T> request;
+        try {
+            request = deserializer.readNext(in);
+        } catch (IOException e) {
+            metrics.decodeFailed();
+            throw e;
+        }
+        if (request.isPresent()) {
+            metrics.messageDecoded(start < 0 ? -1 : System.nanoTime() - start);
+        }
+        return request;
+    }
+
+    private InputStream getInputStream(Socket socket, ConnectionContext context) {
         try {
-            return new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+            if (socket.getChannel() != null) {
+                return new ChannelInputStream(
+                        socket.getChannel(),
+                        context.bufferPool(),
+                        context.receiveBufferSize(),
+                        context.metrics(),
+                        context.watchdog(),
+                        socket.getSoTimeout()
+                );
+            }
+
+            InputStream in = socket.getInputStream();
+            if (context.metrics().isEnabled() || context.watchdog().isEnabled()) {
+                in = new MeteredInputStream(in, context.metrics(), context.watchdog());
+            }
+            return new BufferedInputStream(in, context.receiveBufferSize().initial());
         } catch (IOException e) {
             throw new TCPServerException("Failed to acquire input stream from the socket", e);
         }
     }
 
+    /**
+     * Writes responses to the messages handled before the input was shut down, as the output is still open.
+     */
+    private void flushQuietly(ResponseWriter<T, ?> responses) {
+        if (responses == null)
+            return;
+        try {
+            responses.flush();
+        } catch (IOException e) {
+            log.debug("Failed to write responses to drained messages", e);
+        }
+    }
+
+    private void close(ResponseWriter<T, ?> responses) {
+        if (responses == null)
+            return;
+        try {
+            responses.close();
+        } catch (IOException e) {
+            log.warn("Failed to release response writer", e);
+        }
+    }
+
     private void close(Socket socket) {
         if (socket.isClosed())
             return;
         try {
             socket.close();
         } catch (IOException e) {
-            throw new TCPServerException("Failed to close socket", e);
+            log.error("Failed to close socket", e);
         }
     }
 }
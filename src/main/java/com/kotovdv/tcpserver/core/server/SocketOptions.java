@@ -0,0 +1,110 @@
+package com.kotovdv.tcpserver.core.server;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Options applied to every connection accepted by {@link Server}. Options, which are not set, keep OS defaults.
+ */
+public final class SocketOptions {
+
+    private static final SocketOptions DEFAULTS = builder().build();
+
+    private final Integer receiveBufferSize;
+    private final Boolean tcpNoDelay;
+    private final Boolean keepAlive;
+    private final int readTimeoutMillis;
+
+    private SocketOptions(Builder builder) {
+        this.receiveBufferSize = builder.receiveBufferSize;
+        this.tcpNoDelay = builder.tcpNoDelay;
+        this.keepAlive = builder.keepAlive;
+        this.readTimeoutMillis = builder.readTimeoutMillis;
+    }
+
+    public static SocketOptions defaults() {
+        return DEFAULTS;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return Read timeout in milliseconds, 0 if reads may block forever.
+     */
+    public int readTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    /**
+     * Applies options, which have to be set before accept. Receive buffer above 64 KiB needs TCP window scaling,
+     * which is negotiated during the handshake, so accepted sockets inherit it from the server socket.
+     */
+    void applyTo(ServerSocket serverSocket) throws SocketException {
+        if (receiveBufferSize != null) {
+            serverSocket.setReceiveBufferSize(receiveBufferSize);
+        }
+    }
+
+    void applyTo(Socket socket) throws SocketException {
+        if (receiveBufferSize != null) {
+            socket.setReceiveBufferSize(receiveBufferSize);
+        }
+        if (tcpNoDelay != null) {
+            socket.setTcpNoDelay(tcpNoDelay);
+        }
+        if (keepAlive != null) {
+            socket.setKeepAlive(keepAlive);
+        }
+        socket.setSoTimeout(readTimeoutMillis);
+    }
+
+    public static final class Builder {
+
+        private Integer receiveBufferSize;
+        private Boolean tcpNoDelay;
+        private Boolean keepAlive;
+        private int readTimeoutMillis;
+
+        private Builder() {
+        }
+
+        /**
+         * SO_RCVBUF of the server socket and accepted sockets.
+         */
+        public Builder receiveBufferSize(int receiveBufferSize) {
+            if (receiveBufferSize < 1)
+                throw new IllegalArgumentException("Illegal receive buffer size value " + receiveBufferSize);
+            this.receiveBufferSize = receiveBufferSize;
+            return this;
+        }
+
+        public Builder tcpNoDelay(boolean tcpNoDelay) {
+            this.tcpNoDelay = tcpNoDelay;
+            return this;
+        }
+
+        public Builder keepAlive(boolean keepAlive) {
+            this.keepAlive = keepAlive;
+            return this;
+        }
+
+        /**
+         * Max time a read may wait for the client, after which connection is closed. Zero means no timeout.
+         */
+        public Builder readTimeout(long timeout, TimeUnit unit) {
+            long millis = unit.toMillis(timeout);
+            if (millis < 0 || millis > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Illegal read timeout value " + timeout + " " + unit);
+            this.readTimeoutMillis = (int) millis;
+            return this;
+        }
+
+        public SocketOptions build() {
+            return new SocketOptions(this);
+        }
+    }
+}
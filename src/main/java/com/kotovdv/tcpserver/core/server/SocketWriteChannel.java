@@ -0,0 +1,108 @@
+package com.kotovdv.tcpserver.core.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Channel, which writes to the socket blocking until at least some bytes are accepted.
+ * <p>
+ * Sockets backed by a channel are written with gathering writes. Channel in non blocking mode, which is the case
+ * with read timeout, waits until it is writable on a selector of its own for up to the read timeout,
+ * so client, which does not read its responses, can not hold the connection forever.
+ * Other sockets are written through their output stream.
+ */
+final class SocketWriteChannel implements GatheringByteChannel {
+
+    private static final int STREAM_CHUNK_SIZE = 8192;
+
+    private final SocketChannel channel;
+    private final OutputStream out;
+    private final int writeTimeoutMillis;
+
+    private Selector selector;
+    private byte[] chunk;
+
+    SocketWriteChannel(Socket socket) throws IOException {
+        this.channel = socket.getChannel();
+        this.out = channel == null ? socket.getOutputStream() : null;
+        this.writeTimeoutMillis = socket.getSoTimeout();
+    }
+
+    @Override
+    public long write(ByteBuffer[] sources, int offset, int length) throws IOException {
+        if (channel == null)
+            return writeStream(sources, offset, length);
+        if (channel.isBlocking())
+            return channel.write(sources, offset, length);
+
+        while (true) {
+            long written = channel.write(sources, offset, length);
+            if (written != 0)
+                return written;
+            awaitWritable();
+        }
+    }
+
+    @Override
+    public long write(ByteBuffer[] sources) throws IOException {
+        return write(sources, 0, sources.length);
+    }
+
+    @Override
+    public int write(ByteBuffer source) throws IOException {
+        return (int) write(new ByteBuffer[]{source}, 0, 1);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel == null || channel.isOpen();
+    }
+
+    /**
+     * Releases selector of the channel, socket itself is closed by its connection handler.
+     */
+    @Override
+    public void close() throws IOException {
+        if (selector != null) {
+            selector.close();
+        }
+    }
+
+    private void awaitWritable() throws IOException {
+        if (selector == null) {
+            selector = Selector.open();
+            channel.register(selector, SelectionKey.OP_WRITE);
+        }
+        if (selector.select(writeTimeoutMillis) == 0) {
+            if (!channel.isOpen())
+                throw new AsynchronousCloseException();
+            throw new SocketTimeoutException("No responses read by client for " + writeTimeoutMillis + " ms");
+        }
+        selector.selectedKeys().clear();
+    }
+
+    private long writeStream(ByteBuffer[] sources, int offset, int length) throws IOException {
+        if (chunk == null) {
+            chunk = new byte[STREAM_CHUNK_SIZE];
+        }
+        long written = 0;
+        for (int i = offset; i < offset + length; i++) {
+            ByteBuffer source = sources[i];
+            while (source.hasRemaining()) {
+                int amount = Math.min(chunk.length, source.remaining());
+                source.get(chunk, 0, amount);
+                out.write(chunk, 0, amount);
+                written += amount;
+            }
+        }
+        return written;
+    }
+}
@@ -0,0 +1,75 @@
+package com.kotovdv.tcpserver.core.server.nio;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * InputStream over the bytes currently available in the buffer.
+ * <p>
+ * Remembers whether reader attempted to go past the end of the buffer,
+ * which allows to distinguish incomplete messages from malformed ones.
+ */
+final class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+    private boolean exhausted;
+    private int mark;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.mark = buffer.position();
+    }
+
+    boolean isExhausted() {
+        return exhausted;
+    }
+
+    @Override
+    public int read() {
+        if (!buffer.hasRemaining()) {
+            exhausted = true;
+            return -1;
+        }
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+        if (length == 0)
+            return 0;
+        if (!buffer.hasRemaining()) {
+            exhausted = true;
+            return -1;
+        }
+        int amount = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, amount);
+        return amount;
+    }
+
+    @Override
+    public long skip(long n) {
+        int amount = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + amount);
+        return amount;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readLimit) {
+        mark = buffer.position();
+    }
+
+    @Override
+    public void reset() {
+        buffer.position(mark);
+    }
+}
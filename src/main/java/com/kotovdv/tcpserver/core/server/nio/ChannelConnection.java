@@ -0,0 +1,84 @@
+package com.kotovdv.tcpserver.core.server.nio;
+
+import com.kotovdv.tcpserver.core.message.MessageBatcher;
+import com.kotovdv.tcpserver.core.message.MessageDecoder;
+import com.kotovdv.tcpserver.core.metrics.ConnectionMetrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.function.Consumer;
+
+/**
+ * State of a single client connection of the {@link NioServer}.
+ * <p>
+ * Used only from the event loop thread owning the connection, so messages of a single connection
+ * are handled sequentially and in order.
+ */
+final class ChannelConnection<T> {
+
+    private static final Logger log = LogManager.getLogger(ChannelConnection.class);
+
+    final SocketChannel channel;
+    private final MessageDecoder<T> decoder;
+    private final MessageBatcher<T> batcher;
+    private final ConnectionMetrics metrics;
+    private final Consumer<T> handler;
+
+    private boolean measured;
+    private long messageStart;
+
+    ChannelConnection(SocketChannel channel,
+                      MessageDecoder<T> decoder,
+                      MessageBatcher<T> batcher,
+                      ConnectionMetrics metrics) {
+        this.channel = channel;
+        this.decoder = decoder;
+        this.batcher = batcher;
+        this.metrics = metrics;
+        this.handler = metrics.isEnabled() ? this::addMeasured : batcher::add;
+    }
+
+    void onRead(ByteBuffer data) throws IOException {
+        if (metrics.isEnabled()) {
+            metrics.bytesRead(data.remaining());
+            //Waiting for the client is not decoding -> time only messages, which start in this read.
+            measured = !decoder.hasPartialMessage();
+            messageStart = System.nanoTime();
+        }
+        try {
+            decoder.decode(data, handler);
+        } catch (IOException e) {
+            metrics.decodeFailed();
+            throw e;
+        } finally {
+            batcher.flush();
+        }
+    }
+
+    void onClose() {
+        if (decoder.hasPartialMessage()) {
+            log.error("Connection closed prematurely, incomplete message was discarded");
+        }
+    }
+
+    /**
+     * Called once channel of the connection is closed for any reason.
+     */
+    void release() {
+        metrics.close();
+    }
+
+    private void addMeasured(T message) {
+        metrics.messageDecoded(measured ? System.nanoTime() - messageStart : -1);
+        try {
+            batcher.add(message);
+        } finally {
+            //Messages are handled while being decoded, so handling time is excluded from decode latency of the next one.
+            measured = true;
+            messageStart = System.nanoTime();
+        }
+    }
+}
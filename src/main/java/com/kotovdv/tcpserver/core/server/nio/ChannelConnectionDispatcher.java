@@ -0,0 +1,37 @@
+package com.kotovdv.tcpserver.core.server.nio;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Dispatches incoming channel connections to event loops in round robin order.
+ */
+class ChannelConnectionDispatcher {
+
+    private static final Logger log = LogManager.getLogger(ChannelConnectionDispatcher.class);
+
+    void dispatch(ServerSocketChannel serverChannel, EventLoop[] eventLoops) {
+        int next = 0;
+
+        while (!Thread.currentThread().isInterrupted()) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (ClosedChannelException e) {
+                //Server channel was closed on server stop -> do nothing.
+                return;
+            } catch (IOException e) {
+                log.error("Failed to accept client connection", e);
+                return;
+            }
+
+            eventLoops[next].register(channel);
+            next = (next + 1) % eventLoops.length;
+        }
+    }
+}
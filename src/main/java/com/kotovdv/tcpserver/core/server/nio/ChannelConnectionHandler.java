@@ -0,0 +1,74 @@
+package com.kotovdv.tcpserver.core.server.nio;
+
+import com.kotovdv.tcpserver.core.message.MessageBatcher;
+import com.kotovdv.tcpserver.core.message.MessageDecoder;
+import com.kotovdv.tcpserver.core.message.MessageDeserializer;
+import com.kotovdv.tcpserver.core.message.MessageHandler;
+import com.kotovdv.tcpserver.core.metrics.ConnectionMetrics;
+
+import java.nio.channels.SocketChannel;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Creates state for connections accepted by {@link NioServer}, which decodes received bytes
+ * and passes resulting messages to the message handler.
+ */
+public class ChannelConnectionHandler<T> {
+
+    private final MessageHandler<T> handler;
+    private final Supplier<? extends MessageDecoder<T>> decoderFactory;
+    private final int maxBatchSize;
+    private final long maxLinger;
+    private final TimeUnit lingerUnit;
+
+    /**
+     * @param handler        Message handler shared by all connections.
+     * @param decoderFactory Factory of decoders, called once per connection.
+     */
+    public ChannelConnectionHandler(MessageHandler<T> handler,
+                                    Supplier<? extends MessageDecoder<T>> decoderFactory) {
+        this(handler, decoderFactory, 1, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates handler, which passes messages to {@link com.kotovdv.tcpserver.core.message.BatchMessageHandler}
+     * in batches of up to maxBatchSize messages decoded from the same read.
+     */
+    public ChannelConnectionHandler(MessageHandler<T> handler,
+                                    Supplier<? extends MessageDecoder<T>> decoderFactory,
+                                    int maxBatchSize,
+                                    long maxLinger,
+                                    TimeUnit unit) {
+        if (maxBatchSize < 1)
+            throw new IllegalArgumentException("Illegal max batch size value " + maxBatchSize);
+        if (maxLinger < 0)
+            throw new IllegalArgumentException("Illegal max linger value " + maxLinger);
+
+        this.handler = handler;
+        this.decoderFactory = decoderFactory;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLinger = maxLinger;
+        this.lingerUnit = Objects.requireNonNull(unit, "Linger unit can not be null");
+    }
+
+    /**
+     * Creates handler, which drives blocking deserializer over received bytes.
+     * Incomplete messages are deserialized from the start each time more bytes arrive,
+     * so prefer {@link MessageDecoder} based constructor where one is available.
+     */
+    public ChannelConnectionHandler(MessageHandler<T> handler,
+                                    MessageDeserializer<T> deserializer) {
+        this(handler, () -> new DeserializingMessageDecoder<>(deserializer));
+    }
+
+    ChannelConnection<T> open(SocketChannel channel, ConnectionMetrics metrics) {
+        return new ChannelConnection<>(
+                channel,
+                decoderFactory.get(),
+                new MessageBatcher<>(metrics.measure(handler), maxBatchSize, maxLinger, lingerUnit),
+                metrics
+        );
+    }
+}
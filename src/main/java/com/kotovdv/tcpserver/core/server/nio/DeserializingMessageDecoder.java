@@ -0,0 +1,113 @@
+package com.kotovdv.tcpserver.core.server.nio;
+
+import com.kotovdv.tcpserver.core.message.MessageDecoder;
+import com.kotovdv.tcpserver.core.message.MessageDeserializer;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Adapts blocking {@link MessageDeserializer} to the {@link MessageDecoder} contract.
+ * <p>
+ * Deserializer is fed with received bytes through an InputStream view, which reports when deserializer ran out of them.
+ * In that case message is considered incomplete and its bytes are kept until the next call,
+ * so incomplete message is deserialized from the start once more bytes arrive.
+ * Buffer is released as soon as there is nothing left in it, so idle connections do not hold any memory.
+ */
+final class DeserializingMessageDecoder<T> implements MessageDecoder<T> {
+
+    private static final int MIN_PENDING_CAPACITY = 256;
+
+    private final MessageDeserializer<T> deserializer;
+
+    //Bytes left from previous calls in read mode, null if there are none.
+    private ByteBuffer pending;
+
+    DeserializingMessageDecoder(MessageDeserializer<T> deserializer) {
+        this.deserializer = deserializer;
+    }
+
+    @Override
+    public void decode(ByteBuffer buffer, Consumer<? super T> consumer) throws IOException {
+        ByteBuffer input = input(buffer);
+        try {
+            deserialize(input, consumer);
+        } finally {
+            retain(input);
+        }
+    }
+
+    @Override
+    public boolean hasPartialMessage() {
+        return pending != null;
+    }
+
+    /**
+     * Feeds complete messages of the buffer to the deserializer.
+     * Incomplete message at the end of the buffer is left unconsumed.
+     */
+    private void deserialize(ByteBuffer input, Consumer<? super T> consumer) throws IOException {
+        ByteBufferInputStream in = new ByteBufferInputStream(input);
+        DataInputStream stream = new DataInputStream(in);
+
+        while (input.hasRemaining()) {
+            int messageStart = input.position();
+
+            Optional<T> message;
+            try {
+                message = deserializer.readNext(stream);
+            } catch (IOException e) {
+                if (!in.isExhausted())
+                    throw e;
+                //Message is not complete yet -> wait for the rest of it.
+                message = Optional.empty();
+            }
+
+            if (!message.isPresent()) {
+                input.position(messageStart);
+                return;
+            }
+
+            consumer.accept(message.get());
+        }
+    }
+
+    /**
+     * @return Buffer with bytes left from previous calls followed by the given data.
+     */
+    private ByteBuffer input(ByteBuffer data) {
+        if (pending == null)
+            return data;
+
+        pending.compact();
+        if (pending.remaining() < data.remaining()) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + data.remaining()));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        pending.put(data);
+        pending.flip();
+
+        return pending;
+    }
+
+    /**
+     * Keeps unconsumed bytes of the buffer previously returned by {@link #input(ByteBuffer)} till the next call.
+     */
+    private void retain(ByteBuffer input) {
+        if (!input.hasRemaining()) {
+            pending = null;
+            return;
+        }
+        if (input == pending)
+            return;
+
+        pending = ByteBuffer.allocate(Math.max(MIN_PENDING_CAPACITY, input.remaining()));
+        pending.put(input);
+        pending.flip();
+    }
+}
@@ -0,0 +1,167 @@
+package com.kotovdv.tcpserver.core.server.nio;
+
+import com.kotovdv.tcpserver.core.exception.TCPServerException;
+import com.kotovdv.tcpserver.core.metrics.ConnectionMetrics;
+import com.kotovdv.tcpserver.core.metrics.ServerMetrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single threaded loop, which reads data from all the channels registered in it.
+ * <p>
+ * All the connections of the loop share one direct read buffer,
+ * only incomplete messages are kept per connection until the rest of their bytes arrive.
+ */
+class EventLoop implements Runnable {
+
+    private static final Logger log = LogManager.getLogger(EventLoop.class);
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_READS_PER_EVENT = 16;
+
+    private final ChannelConnectionHandler<?> handler;
+    private final ServerMetrics metrics;
+    private final Selector selector;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final Queue<SocketChannel> registrations = new ConcurrentLinkedQueue<>();
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    private volatile boolean running = true;
+
+    EventLoop(ChannelConnectionHandler<?> handler, ServerMetrics metrics) {
+        this.handler = handler;
+        this.metrics = metrics;
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new TCPServerException("Failed to open selector", e);
+        }
+    }
+
+    /**
+     * Hands accepted channel over to this loop. Safe to call from any thread.
+     */
+    void register(SocketChannel channel) {
+        registrations.offer(channel);
+        selector.wakeup();
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    boolean awaitTermination(long timeoutMillis) throws InterruptedException {
+        return terminated.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select();
+                registerPending();
+                processSelectedKeys();
+            }
+        } catch (IOException e) {
+            log.error("Event loop failed", e);
+        } finally {
+            closeAll();
+            terminated.countDown();
+        }
+    }
+
+    private void registerPending() {
+        SocketChannel channel;
+        while ((channel = registrations.poll()) != null) {
+            ConnectionMetrics connectionMetrics = ConnectionMetrics.DISABLED;
+            try {
+                connectionMetrics = metrics.connectionAccepted(channel.getRemoteAddress());
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ, handler.open(channel, connectionMetrics));
+            } catch (IOException | RuntimeException e) {
+                //Failure of a single connection must not stop the loop serving the rest of them.
+                log.error("Failed to register client connection", e);
+                connectionMetrics.close();
+                close(channel);
+            }
+        }
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+
+            if (key.isValid() && key.isReadable()) {
+                read(key);
+            }
+        }
+    }
+
+    private void read(SelectionKey key) {
+        ChannelConnection<?> connection = (ChannelConnection<?>) key.attachment();
+        try {
+            for (int i = 0; i < MAX_READS_PER_EVENT; i++) {
+                readBuffer.clear();
+                int read = connection.channel.read(readBuffer);
+                if (read < 0) {
+                    connection.onClose();
+                    close(key);
+                    return;
+                }
+                if (read == 0)
+                    return;
+
+                readBuffer.flip();
+                connection.onRead(readBuffer);
+
+                if (read < READ_BUFFER_SIZE)
+                    return;
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to handle socket connection", e);
+            close(key);
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            close(key);
+        }
+        SocketChannel channel;
+        while ((channel = registrations.poll()) != null) {
+            close(channel);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.error("Failed to close selector", e);
+        }
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        close((SocketChannel) key.channel());
+        ((ChannelConnection<?>) key.attachment()).release();
+    }
+
+    private void close(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.error("Failed to close socket channel", e);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.kotovdv.tcpserver.core.server.nio;
+
+import com.kotovdv.tcpserver.core.exception.TCPServerException;
+import com.kotovdv.tcpserver.core.metrics.ServerMetrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server engine, which multiplexes all client connections over a fixed amount of selector based event loops.
+ * <p>
+ * Unlike {@link com.kotovdv.tcpserver.core.server.Server} it does not dedicate a thread to each connection,
+ * so idle connections cost only their channel and selection key.
+ */
+public class NioServer {
+
+    private static final Logger log = LogManager.getLogger(NioServer.class);
+    private static final int DEFAULT_SOCKET_BACKLOG = 1024;
+
+    private final int serverPort;
+    private final int socketBacklog;
+    private final int eventLoopsAmount;
+    private final ChannelConnectionHandler<?> handler;
+    private final ServerMetrics metrics;
+    private final ChannelConnectionDispatcher dispatcher = new ChannelConnectionDispatcher();
+    private final Object lock = new Object();
+
+    private volatile boolean started;
+    private ServerSocketChannel serverChannel;
+    private EventLoop[] eventLoops;
+    private Thread acceptor;
+
+    public NioServer(int port,
+                     ChannelConnectionHandler<?> handler) {
+        this(port, Runtime.getRuntime().availableProcessors(), handler);
+    }
+
+    public NioServer(int port,
+                     int eventLoops,
+                     ChannelConnectionHandler<?> handler) {
+        this(port, DEFAULT_SOCKET_BACKLOG, eventLoops, handler);
+    }
+
+    public NioServer(int port,
+                     int socketBacklog,
+                     int eventLoops,
+                     ChannelConnectionHandler<?> handler) {
+        this(port, socketBacklog, eventLoops, handler, ServerMetrics.DISABLED);
+    }
+
+    /**
+     * @param metrics Metrics of accepted connections, e.g. {@link com.kotovdv.tcpserver.core.metrics.MetricsRegistry}.
+     */
+    public NioServer(int port,
+                     int socketBacklog,
+                     int eventLoops,
+                     ChannelConnectionHandler<?> handler,
+                     ServerMetrics metrics) {
+        if (port < 0 || port > 65535)
+            throw new IllegalArgumentException("Illegal port value " + port);
+        this.serverPort = port;
+
+        if (socketBacklog < 0)
+            throw new IllegalArgumentException("Illegal socket backlog value " + socketBacklog);
+        this.socketBacklog = socketBacklog;
+
+        if (eventLoops < 1)
+            throw new IllegalArgumentException("Illegal event loops value " + eventLoops);
+        this.eventLoopsAmount = eventLoops;
+
+        this.handler = Objects.requireNonNull(handler, "Channel connection handler can not be null");
+        this.metrics = Objects.requireNonNull(metrics, "Server metrics can not be null");
+    }
+
+    public void start() {
+        if (started)
+            return;
+        synchronized (lock) {
+            if (started)
+                return;
+            doStart();
+            started = true;
+        }
+    }
+
+    public void stop(long timeout, TimeUnit unit) {
+        if (!started)
+            return;
+        synchronized (lock) {
+            if (!started)
+                return;
+            doStop(timeout, unit);
+            started = false;
+        }
+    }
+
+    private void doStart() {
+        log.info("Attempting to start NIO TCP Server on port [{}]", serverPort);
+
+        try {
+            this.serverChannel = ServerSocketChannel.open();
+            this.serverChannel.bind(new InetSocketAddress(serverPort), socketBacklog);
+        } catch (IOException e) {
+            closeServerChannel();
+            throw new TCPServerException("Failed to open server socket channel at port: " + serverPort, e);
+        }
+
+        log.info("Server socket channel initialized");
+
+        this.eventLoops = new EventLoop[eventLoopsAmount];
+        for (int i = 0; i < eventLoopsAmount; i++) {
+            eventLoops[i] = new EventLoop(handler, metrics);
+            new Thread(eventLoops[i], "nio-event-loop-" + i).start();
+        }
+        log.info("[{}] event loops initialized", eventLoopsAmount);
+
+        this.acceptor = new Thread(() -> dispatcher.dispatch(serverChannel, eventLoops), "nio-acceptor");
+        this.acceptor.start();
+
+        log.info("Server started");
+    }
+
+    private void doStop(long timeout, TimeUnit unit) {
+        log.info("Attempting to stop NIO TCP Server");
+        log.info("Shutting down server socket channel");
+        closeServerChannel();
+
+        log.info("Shutting down event loops");
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            acceptor.interrupt();
+            acceptor.join(remainingMillis(deadline));
+            for (EventLoop eventLoop : eventLoops) {
+                eventLoop.shutdown();
+            }
+            for (EventLoop eventLoop : eventLoops) {
+                eventLoop.awaitTermination(remainingMillis(deadline));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        log.info("Server stopped");
+    }
+
+    private void closeServerChannel() {
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            log.error("Failed to close server socket channel", e);
+        }
+    }
+
+    private static long remainingMillis(long deadline) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+}
@@ -0,0 +1,248 @@
+package com.kotovdv.tcpserver.core.timer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel, which runs a large amount of timeouts with a single thread, trading precision for cost.
+ * <p>
+ * Timeouts are put into the bucket of the tick they expire at, modulo wheel size. Every tick the thread expires
+ * only the timeouts of a single bucket, so scheduling, cancelling and expiring each cost O(1) no matter how many
+ * timeouts are pending. Timeouts never expire early, but may expire up to one tick late.
+ * <p>
+ * Tasks are run by the wheel thread, so they have to be short, e.g. closing a socket or scheduling another timeout.
+ */
+public final class TimingWheel {
+
+    private static final Logger log = LogManager.getLogger(TimingWheel.class);
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    private final long tickNanos;
+    private final Bucket[] buckets;
+    private final int mask;
+    private final String name;
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final Object lock = new Object();
+
+    private volatile boolean running;
+    private volatile long startNanos;
+    private Thread worker;
+    private long tick;
+
+    /**
+     * @param tickDuration  Precision of the timeouts.
+     * @param ticksPerWheel Amount of buckets, rounded up to the power of two. Timeouts longer than a whole wheel
+     *                      stay in their bucket for several rounds.
+     * @param name          Name of the wheel thread.
+     */
+    public TimingWheel(long tickDuration, TimeUnit unit, int ticksPerWheel, String name) {
+        this.tickNanos = unit.toNanos(tickDuration);
+        if (tickNanos < 1)
+            throw new IllegalArgumentException("Illegal tick duration value " + tickDuration + " " + unit);
+        if (ticksPerWheel < 1 || ticksPerWheel > 1 << 30)
+            throw new IllegalArgumentException("Illegal ticks per wheel value " + ticksPerWheel);
+
+        int size = Integer.highestOneBit(ticksPerWheel);
+        if (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.buckets = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.name = Objects.requireNonNull(name, "Name can not be null");
+    }
+
+    public void start() {
+        synchronized (lock) {
+            if (running)
+                return;
+            running = true;
+            tick = 0;
+            startNanos = System.nanoTime();
+            worker = new Thread(this::run, name);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Stops the wheel thread. Timeouts, which have not expired yet, are discarded.
+     */
+    public void stop() {
+        Thread stopped;
+        synchronized (lock) {
+            if (!running)
+                return;
+            running = false;
+            stopped = worker;
+            worker = null;
+        }
+        LockSupport.unpark(stopped);
+        try {
+            stopped.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Schedules task to be run by the wheel thread once the delay elapses. Safe to call from any thread.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(this, Objects.requireNonNull(task, "Task can not be null"), System.nanoTime() + unit.toNanos(delay));
+        scheduled.offer(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = startNanos + (tick + 1) * tickNanos;
+            long sleep;
+            while ((sleep = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, sleep);
+                if (!running)
+                    return;
+            }
+
+            removeCancelled();
+            transferScheduled();
+            buckets[(int) (tick & mask)].expire();
+            tick++;
+        }
+    }
+
+    private void transferScheduled() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = scheduled.poll();
+            if (timeout == null)
+                return;
+            if (timeout.state.get() == Timeout.CANCELLED)
+                continue;
+
+            //Bucket of the current tick is expired right after transfer, so late timeouts go there.
+            long expiryTick = Math.max((timeout.deadline - startNanos) / tickNanos, tick);
+            timeout.remainingRounds = (expiryTick - tick) / buckets.length;
+            buckets[(int) (expiryTick & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * Handle of a scheduled task.
+     */
+    public static final class Timeout {
+
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final TimingWheel wheel;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        //Accessed only by the wheel thread.
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout previous;
+        private Timeout next;
+
+        private Timeout(TimingWheel wheel, Runnable task, long deadline) {
+            this.wheel = wheel;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return false if task has already been run or cancelled.
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED))
+                return false;
+            wheel.cancelled.offer(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(PENDING, EXPIRED))
+                return;
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Failed to run timeout task", e);
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of the timeouts, which expire at the same tick of some round.
+     */
+    private static final class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.previous = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire() {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.previous != null) {
+                timeout.previous.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.previous = timeout.previous;
+            } else {
+                tail = timeout.previous;
+            }
+            timeout.previous = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
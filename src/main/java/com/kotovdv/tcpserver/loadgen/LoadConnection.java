@@ -0,0 +1,98 @@
+package com.kotovdv.tcpserver.loadgen;
+
+import com.kotovdv.tcpserver.core.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single connection of the {@link LoadGenerator}, which writes batches of pre-encoded frames.
+ * <p>
+ * Every frame has its own view over the shared encoded bytes, so batch is sent with a gathering write without copying.
+ */
+final class LoadConnection implements Runnable {
+
+    private final InetSocketAddress address;
+    private final ByteBuffer[] frames;
+    private final int batchSize;
+    private final long intervalNanos;
+    private final long durationNanos;
+    private final LatencyHistogram latency;
+
+    volatile long messages;
+    volatile long bytes;
+    volatile Exception failure;
+
+    LoadConnection(InetSocketAddress address,
+                   ByteBuffer encodedFrames,
+                   int framesAmount,
+                   int batchSize,
+                   long intervalNanos,
+                   long durationNanos,
+                   LatencyHistogram latency) {
+        this.address = address;
+        this.frames = new ByteBuffer[framesAmount];
+        int frameSize = encodedFrames.remaining() / framesAmount;
+        for (int i = 0; i < framesAmount; i++) {
+            frames[i] = encodedFrames.slice(i * frameSize, frameSize);
+        }
+        this.batchSize = batchSize;
+        this.intervalNanos = intervalNanos;
+        this.durationNanos = durationNanos;
+        this.latency = latency;
+    }
+
+    @Override
+    public void run() {
+        ByteBuffer[] batchFrames = new ByteBuffer[batchSize];
+
+        try (SocketChannel channel = SocketChannel.open(address)) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            long start = System.nanoTime();
+            long end = start + durationNanos;
+            long sent = 0;
+            long written = 0;
+
+            for (long now = start; now < end; now = System.nanoTime()) {
+                int batch = batchSize;
+                if (intervalNanos > 0) {
+                    long due = (now - start) / intervalNanos + 1 - sent;
+                    if (due <= 0) {
+                        LockSupport.parkNanos(start + sent * intervalNanos - now);
+                        continue;
+                    }
+                    batch = (int) Math.min(due, batchSize);
+                }
+
+                long remaining = 0;
+                for (int i = 0; i < batch; i++) {
+                    batchFrames[i] = frames[(int) ((sent + i) % frames.length)].rewind();
+                    remaining += batchFrames[i].remaining();
+                }
+                written += remaining;
+
+                long writeStart = System.nanoTime();
+                while (remaining > 0) {
+                    remaining -= channel.write(batchFrames, 0, batch);
+                }
+                long done = System.nanoTime();
+
+                for (int i = 0; i < batch; i++) {
+                    //Fixed rate messages are measured from their intended send time, not from the actual one.
+                    latency.record(intervalNanos > 0 ? done - (start + (sent + i) * intervalNanos) : done - writeStart);
+                }
+                sent += batch;
+            }
+
+            this.messages = sent;
+            this.bytes = written;
+        } catch (IOException e) {
+            this.failure = e;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.kotovdv.tcpserver.loadgen;
+
+import com.kotovdv.tcpserver.core.exception.TCPServerException;
+import com.kotovdv.tcpserver.core.metrics.LatencyHistogram;
+import com.kotovdv.tcpserver.message.DefaultMessageSerializer;
+import com.kotovdv.tcpserver.message.Message;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends pre-encoded messages to the server over several connections, each driven by its own thread.
+ * <p>
+ * In max throughput mode (zero rate) every connection writes batches of messages back to back.
+ * In fixed rate mode every message has its intended send time, independent of how long previous writes took,
+ * and latency is measured from that time. This way stalls of the server are not hidden by the generator
+ * slowing down with it (coordinated omission). Server does not respond to messages, so latency is the time
+ * until message is written to the socket, which includes waiting for a full socket buffer to drain.
+ * <p>
+ * Usage: {@code LoadGenerator --port=8087 --connections=4 --rate=100000 --duration=10 --payload=32 --batch=64}
+ */
+public class LoadGenerator {
+
+    private static final Logger log = LogManager.getLogger(LoadGenerator.class);
+    private static final int DISTINCT_FRAMES = 1024;
+
+    private final InetSocketAddress address;
+    private final int connections;
+    private final long rate;
+    private final long durationNanos;
+    private final int payloadSize;
+    private final int batchSize;
+
+    private LoadGenerator(Builder builder) {
+        this.address = new InetSocketAddress(builder.host, builder.port);
+
+        if (builder.connections < 1)
+            throw new IllegalArgumentException("Illegal connections value " + builder.connections);
+        this.connections = builder.connections;
+
+        if (builder.rate < 0)
+            throw new IllegalArgumentException("Illegal rate value " + builder.rate);
+        this.rate = builder.rate;
+
+        if (builder.durationNanos <= 0)
+            throw new IllegalArgumentException("Illegal duration value " + builder.durationNanos);
+        this.durationNanos = builder.durationNanos;
+
+        if (builder.payloadSize < 0)
+            throw new IllegalArgumentException("Illegal payload size value " + builder.payloadSize);
+        this.payloadSize = builder.payloadSize;
+
+        if (builder.batchSize < 1 || builder.batchSize > DISTINCT_FRAMES)
+            throw new IllegalArgumentException("Illegal batch size value " + builder.batchSize);
+        this.batchSize = builder.batchSize;
+    }
+
+    public static Builder builder(String host, int port) {
+        return new Builder(host, port);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Builder builder = builder("localhost", 8087);
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            if (option.length != 2)
+                throw new IllegalArgumentException("Illegal option " + arg + ", expected --name=value");
+            switch (option[0]) {
+                case "host":
+                    builder.host = option[1];
+                    break;
+                case "port":
+                    builder.port = Integer.parseInt(option[1]);
+                    break;
+                case "connections":
+                    builder.connections(Integer.parseInt(option[1]));
+                    break;
+                case "rate":
+                    builder.rate(Long.parseLong(option[1]));
+                    break;
+                case "duration":
+                    builder.duration(Long.parseLong(option[1]), TimeUnit.SECONDS);
+                    break;
+                case "payload":
+                    builder.payloadSize(Integer.parseInt(option[1]));
+                    break;
+                case "batch":
+                    builder.batchSize(Integer.parseInt(option[1]));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+
+        LoadReport report = builder.build().run();
+        log.info("Load test finished{}{}", System.lineSeparator(), report);
+    }
+
+    /**
+     * Runs the load for the configured duration and waits for all the connections to finish.
+     */
+    public LoadReport run() throws InterruptedException {
+        log.info("Sending messages to [{}] over [{}] connections at [{}]", address, connections,
+                rate == 0 ? "max throughput" : rate + " msg/s");
+
+        ByteBuffer frames = encodeFrames();
+        LatencyHistogram latency = new LatencyHistogram();
+        //Every connection keeps its share of the total rate.
+        long intervalNanos = rate == 0 ? 0 : Math.max(1, TimeUnit.SECONDS.toNanos(1) * connections / rate);
+
+        List<LoadConnection> loadConnections = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            LoadConnection connection = new LoadConnection(address, frames, DISTINCT_FRAMES, batchSize, intervalNanos, durationNanos, latency);
+            Thread thread = new Thread(connection, "load-connection-" + i);
+            loadConnections.add(connection);
+            threads.add(thread);
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        long messages = 0;
+        long bytes = 0;
+        for (LoadConnection connection : loadConnections) {
+            if (connection.failure != null)
+                throw new TCPServerException("Load connection failed", connection.failure);
+            messages += connection.messages;
+            bytes += connection.bytes;
+        }
+
+        return new LoadReport(messages, bytes, elapsed, latency.snapshot());
+    }
+
+    /**
+     * @return Read only buffer with all the distinct frames of the same size one after another.
+     */
+    private ByteBuffer encodeFrames() {
+        DefaultMessageSerializer serializer = new DefaultMessageSerializer();
+        Random random = new Random(42);
+        ByteBuffer frames = null;
+        for (int i = 0; i < DISTINCT_FRAMES; i++) {
+            char[] payload = new char[payloadSize];
+            for (int j = 0; j < payloadSize; j++) {
+                payload[j] = (char) ('a' + random.nextInt(26));
+            }
+            Message message = new Message((byte) 1, (short) random.nextInt(Short.MAX_VALUE), random.nextInt(), new String(payload));
+            if (frames == null) {
+                frames = ByteBuffer.allocateDirect(serializer.sizeOf(message) * DISTINCT_FRAMES);
+            }
+            serializer.serialize(message, frames);
+        }
+        return frames.flip().asReadOnlyBuffer();
+    }
+
+    public static final class Builder {
+
+        private String host;
+        private int port;
+        private int connections = 4;
+        private long rate;
+        private long durationNanos = TimeUnit.SECONDS.toNanos(10);
+        private int payloadSize = 32;
+        private int batchSize = 64;
+
+        private Builder(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        public Builder connections(int connections) {
+            this.connections = connections;
+            return this;
+        }
+
+        /**
+         * Total amount of messages per second over all the connections. Zero means max throughput.
+         */
+        public Builder rate(long rate) {
+            this.rate = rate;
+            return this;
+        }
+
+        public Builder duration(long duration, TimeUnit unit) {
+            this.durationNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Length of the payload of each message.
+         */
+        public Builder payloadSize(int payloadSize) {
+            this.payloadSize = payloadSize;
+            return this;
+        }
+
+        /**
+         * Max amount of messages written to the socket at once, up to 1024.
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        public LoadGenerator build() {
+            return new LoadGenerator(this);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.kotovdv.tcpserver.loadgen;
+
+import com.kotovdv.tcpserver.core.metrics.LatencySnapshot;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Results of a {@link LoadGenerator} run. Latencies are in nanoseconds.
+ */
+public final class LoadReport {
+
+    public final long messages;
+    public final long bytes;
+    public final long elapsedNanos;
+    public final LatencySnapshot latency;
+
+    public LoadReport(long messages, long bytes, long elapsedNanos, LatencySnapshot latency) {
+        this.messages = messages;
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+        this.latency = latency;
+    }
+
+    public long messagesPerSecond() {
+        return elapsedNanos == 0 ? 0 : messages * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        return String.format("Sent %d messages (%d bytes) in %.2f s, %d msg/s%n" +
+                        "Latency, us: p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f",
+                messages, bytes, seconds, messagesPerSecond(),
+                micros(latency.getP50()), micros(latency.getP90()), micros(latency.getP99()),
+                micros(latency.getP999()), micros(latency.getMax()));
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+}
@@ -0,0 +1,124 @@
+package com.kotovdv.tcpserver.message;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing table of counts and sums by user ID and message type, stored in primitive arrays.
+ * <p>
+ * Not thread safe, see {@link AggregatingMessageHandler} for the way it is shared.
+ */
+final class AggregateTable {
+
+    //Key of user ID and message type takes 48 bits, so it is never equal to the marker of empty slot.
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] keys;
+    private long[] counts;
+    private long[] sums;
+    private int size;
+
+    AggregateTable() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    static long key(int userId, short messageType) {
+        return ((long) userId << 16) | (messageType & 0xFFFF);
+    }
+
+    static int userId(long key) {
+        return (int) (key >> 16);
+    }
+
+    static short messageType(long key) {
+        return (short) key;
+    }
+
+    void add(long key, long count, long sum) {
+        int index = indexOf(key);
+        if (keys[index] == EMPTY) {
+            keys[index] = key;
+            size++;
+        }
+        counts[index] += count;
+        sums[index] += sum;
+
+        //Keep load factor at most 1/2, so that probe sequences stay short.
+        if (size * 2 > keys.length) {
+            resize();
+        }
+    }
+
+    void addAll(AggregateTable other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != EMPTY) {
+                add(other.keys[i], other.counts[i], other.sums[i]);
+            }
+        }
+    }
+
+    long count(long key) {
+        int index = indexOf(key);
+        return keys[index] == EMPTY ? 0 : counts[index];
+    }
+
+    long sum(long key) {
+        int index = indexOf(key);
+        return keys[index] == EMPTY ? 0 : sums[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void forEach(Aggregates.Visitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                visitor.visit(userId(keys[i]), messageType(keys[i]), counts[i], sums[i]);
+            }
+        }
+    }
+
+    /**
+     * @return Index of the slot holding the key or of the empty slot, where it belongs.
+     */
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        int index = hash(key) & mask;
+        while (keys[index] != EMPTY && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        long[] oldSums = sums;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                counts[index] = oldCounts[i];
+                sums[index] = oldSums[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        counts = new long[capacity];
+        sums = new long[capacity];
+    }
+
+    private static int hash(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
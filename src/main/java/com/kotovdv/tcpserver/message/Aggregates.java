@@ -0,0 +1,53 @@
+package com.kotovdv.tcpserver.message;
+
+/**
+ * Snapshot of counts and sums by user ID and message type taken by {@link AggregatingMessageHandler}.
+ */
+public final class Aggregates {
+
+    public final long timestampNanos;
+    private final AggregateTable table;
+
+    Aggregates(long timestampNanos, AggregateTable table) {
+        this.timestampNanos = timestampNanos;
+        this.table = table;
+    }
+
+    /**
+     * @return Amount of messages of the user with the given type.
+     */
+    public long count(int userId, short messageType) {
+        return table.count(AggregateTable.key(userId, messageType));
+    }
+
+    /**
+     * @return Sum of values of messages of the user with the given type.
+     */
+    public long sum(int userId, short messageType) {
+        return table.sum(AggregateTable.key(userId, messageType));
+    }
+
+    /**
+     * @return Amount of distinct pairs of user ID and message type.
+     */
+    public int size() {
+        return table.size();
+    }
+
+    public boolean isEmpty() {
+        return table.isEmpty();
+    }
+
+    /**
+     * Visits all the pairs of user ID and message type in no particular order.
+     */
+    public void forEach(Visitor visitor) {
+        table.forEach(visitor);
+    }
+
+    @FunctionalInterface
+    public interface Visitor {
+
+        void visit(int userId, short messageType, long count, long sum);
+    }
+}
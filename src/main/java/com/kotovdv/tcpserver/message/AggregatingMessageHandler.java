@@ -0,0 +1,153 @@
+package com.kotovdv.tcpserver.message;
+
+import com.kotovdv.tcpserver.core.message.MessageHandler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Counts messages and sums their values by user ID and message type, instead of passing the messages on.
+ * <p>
+ * Messages are added to partial tables of primitive arrays, which are striped by thread, so connection threads
+ * never box keys and rarely meet each other. Partials are merged on snapshot.
+ * {@link #drain()} empties the partials, so periodic reports contain aggregates of their period only.
+ */
+public class AggregatingMessageHandler implements MessageHandler<Message>, AutoCloseable {
+
+    private static final Logger log = LogManager.getLogger(AggregatingMessageHandler.class);
+
+    private final ToLongFunction<? super Message> value;
+    private final Stripe[] stripes;
+    private final int mask;
+    private final Object lock = new Object();
+
+    //Guarded by lock.
+    private ScheduledExecutorService reporting;
+
+    /**
+     * Creates handler, which sums payload lengths.
+     */
+    public AggregatingMessageHandler() {
+        this(message -> message.payload.length());
+    }
+
+    /**
+     * @param value Value of the message, which is summed.
+     */
+    public AggregatingMessageHandler(ToLongFunction<? super Message> value) {
+        this(value, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * @param stripes Amount of partial tables, rounded up to the power of two.
+     */
+    public AggregatingMessageHandler(ToLongFunction<? super Message> value, int stripes) {
+        if (stripes < 1 || stripes > 1 << 16)
+            throw new IllegalArgumentException("Illegal stripes value " + stripes);
+
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+        this.value = value;
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.mask = size - 1;
+    }
+
+    @Override
+    public void handle(Message message) {
+        long key = AggregateTable.key(message.userId, message.messageType);
+        long amount = value.applyAsLong(message);
+        Stripe stripe = stripes[stripeOf(Thread.currentThread().threadId())];
+        //Lock is taken by the snapshot only, otherwise it is held by threads of the same stripe.
+        synchronized (stripe) {
+            stripe.table.add(key, 1, amount);
+        }
+    }
+
+    /**
+     * @return Aggregates of all the messages handled since the previous drain.
+     */
+    public Aggregates snapshot() {
+        AggregateTable merged = new AggregateTable();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                merged.addAll(stripe.table);
+            }
+        }
+        return new Aggregates(System.nanoTime(), merged);
+    }
+
+    /**
+     * @return Aggregates of all the messages handled since the previous drain, which are reset.
+     */
+    public Aggregates drain() {
+        AggregateTable merged = new AggregateTable();
+        for (Stripe stripe : stripes) {
+            AggregateTable drained;
+            synchronized (stripe) {
+                if (stripe.table.isEmpty())
+                    continue;
+                drained = stripe.table;
+                stripe.table = new AggregateTable();
+            }
+            merged.addAll(drained);
+        }
+        return new Aggregates(System.nanoTime(), merged);
+    }
+
+    /**
+     * Starts passing aggregates of each period, see {@link #drain()}, to the reporter from a background thread.
+     * Only one reporter may be active at a time.
+     */
+    public void startReporting(Consumer<? super Aggregates> reporter, long period, TimeUnit unit) {
+        synchronized (lock) {
+            if (reporting != null)
+                throw new IllegalStateException("Aggregates reporting is already started");
+
+            reporting = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "aggregates-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporting.scheduleAtFixedRate(() -> {
+                try {
+                    reporter.accept(drain());
+                } catch (RuntimeException e) {
+                    log.error("Failed to report aggregates", e);
+                }
+            }, period, period, unit);
+        }
+    }
+
+    /**
+     * Stops reporting. Messages are still aggregated afterwards.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (reporting != null) {
+                reporting.shutdownNow();
+                reporting = null;
+            }
+        }
+    }
+
+    private int stripeOf(long threadId) {
+        long hash = threadId * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mask;
+    }
+
+    private static final class Stripe {
+
+        private AggregateTable table = new AggregateTable();
+    }
+}
@@ -0,0 +1,277 @@
+package com.kotovdv.tcpserver.message;
+
+import com.kotovdv.tcpserver.core.message.MessageHandler;
+import com.kotovdv.tcpserver.core.pipeline.RingBuffer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Prints messages in the same format as {@link PrintingMessageHandler} without making reading threads contend on the stream.
+ * <p>
+ * Each reading thread formats messages into its own scratch buffer and hands a copy of exactly the formatted bytes,
+ * which is the only allocation per message, to the single writer thread over lock free queue.
+ * Writer coalesces them into large writes, so bytes reach the output once write buffer is full or once the oldest
+ * of them waited for the flush interval.
+ * <p>
+ * Once writer fails, e.g. output is closed, messages are dropped and counted instead of waiting for it.
+ */
+public final class AsyncPrintingMessageHandler implements MessageHandler<Message> {
+
+    private static final Logger log = LogManager.getLogger(AsyncPrintingMessageHandler.class);
+    private static final int DEFAULT_QUEUE_CAPACITY = 64 * 1024;
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 10;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final long PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private static final byte[] VERSION = ascii("Version: ");
+    private static final byte[] MESSAGE_TYPE = ascii("Message Type: ");
+    private static final byte[] USER_ID = ascii("User ID: ");
+    private static final byte[] PAYLOAD = ascii("Payload: ");
+    private static final byte[] LINE_SEPARATOR = ascii(System.lineSeparator());
+
+    private final OutputStream outputStream;
+    private final WritableByteChannel channel;
+    private final long flushIntervalNanos;
+    private final RingBuffer<byte[]> queue;
+    private final ThreadLocal<Formatter> formatter = ThreadLocal.withInitial(Formatter::new);
+    private final Thread writer;
+    private final LongAdder dropped = new LongAdder();
+
+    private volatile boolean running = true;
+    private volatile boolean sleeping;
+    private volatile boolean stopped;
+    //Messages appended to the write buffer, but not written yet. Used by writer thread only.
+    private int unflushed;
+
+    public AsyncPrintingMessageHandler(OutputStream outputStream) {
+        this(outputStream, DEFAULT_QUEUE_CAPACITY, DEFAULT_FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param outputStream  Output, file streams are written through their channel.
+     * @param queueCapacity Amount of formatted messages, which may wait for the writer. Readers wait while queue is full.
+     * @param flushInterval Max time formatted message may wait in the write buffer.
+     */
+    public AsyncPrintingMessageHandler(OutputStream outputStream,
+                                       int queueCapacity,
+                                       long flushInterval,
+                                       TimeUnit unit) {
+        this.outputStream = outputStream;
+        this.channel = outputStream instanceof FileOutputStream
+                ? ((FileOutputStream) outputStream).getChannel()
+                : Channels.newChannel(outputStream);
+        this.flushIntervalNanos = unit.toNanos(flushInterval);
+        this.queue = new RingBuffer<>(queueCapacity);
+        this.writer = new Thread(this::write, "printing-writer");
+        this.writer.start();
+    }
+
+    @Override
+    public void handle(Message message) {
+        if (stopped) {
+            dropped.increment();
+            return;
+        }
+        byte[] formatted = formatter.get().format(message);
+        while (!queue.offer(formatted)) {
+            if (!running || stopped) {
+                dropped.increment();
+                return;
+            }
+            LockSupport.parkNanos(PRODUCER_PARK_NANOS);
+        }
+        //Writer may have exited after the check above, in which case nobody is going to poll the message.
+        if (stopped) {
+            dropQueued();
+            return;
+        }
+        if (sleeping) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * @return Amount of messages, which were not printed, because writer was stopped or failed.
+     */
+    public long droppedMessages() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stops the writer after all already queued messages are written.
+     */
+    public void stop(long timeout, TimeUnit unit) {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(Math.max(1, unit.toMillis(timeout)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        long oldestPending = 0;
+
+        try {
+            while (running || !queue.isEmpty()) {
+                byte[] formatted = queue.poll();
+                if (formatted != null) {
+                    if (buffer.position() == 0) {
+                        oldestPending = System.nanoTime();
+                    }
+                    append(buffer, formatted);
+                    continue;
+                }
+
+                long waited = System.nanoTime() - oldestPending;
+                if (buffer.position() > 0 && waited >= flushIntervalNanos) {
+                    flush(buffer);
+                    continue;
+                }
+
+                //Handlers check the flag after publishing, so either they see it or we see their message.
+                sleeping = true;
+                if (running && queue.isEmpty()) {
+                    if (buffer.position() > 0) {
+                        LockSupport.parkNanos(this, flushIntervalNanos - waited);
+                    } else {
+                        LockSupport.park(this);
+                    }
+                }
+                sleeping = false;
+            }
+            flush(buffer);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to print messages", e);
+        } finally {
+            running = false;
+            stopped = true;
+            dropped.add(unflushed);
+            dropQueued();
+        }
+    }
+
+    private void dropQueued() {
+        while (queue.poll() != null) {
+            dropped.increment();
+        }
+    }
+
+    private void append(ByteBuffer buffer, byte[] formatted) throws IOException {
+        if (buffer.remaining() < formatted.length) {
+            flush(buffer);
+        }
+        unflushed++;
+        if (buffer.remaining() < formatted.length) {
+            writeFully(ByteBuffer.wrap(formatted));
+            unflushed--;
+            return;
+        }
+        buffer.put(formatted);
+    }
+
+    private void flush(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+        outputStream.flush();
+        unflushed = 0;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(Charset.defaultCharset());
+    }
+
+    /**
+     * Formats message into reused buffer of the handling thread.
+     */
+    private static final class Formatter {
+
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        byte[] format(Message message) {
+            size = 0;
+            append(VERSION);
+            append(message.version);
+            append(LINE_SEPARATOR);
+            append(MESSAGE_TYPE);
+            append(message.messageType);
+            append(LINE_SEPARATOR);
+            append(USER_ID);
+            append(message.userId);
+            append(LINE_SEPARATOR);
+            append(PAYLOAD);
+            appendPayload(message.payload);
+            append(LINE_SEPARATOR);
+
+            return Arrays.copyOf(bytes, size);
+        }
+
+        private void append(byte[] value) {
+            ensureCapacity(value.length);
+            System.arraycopy(value, 0, bytes, size, value.length);
+            size += value.length;
+        }
+
+        private void append(long value) {
+            ensureCapacity(20);
+            if (value < 0) {
+                bytes[size++] = '-';
+            } else {
+                value = -value;
+            }
+            //Digits are produced from negative value, so that Long.MIN_VALUE does not overflow.
+            int start = size;
+            do {
+                bytes[size++] = (byte) ('0' - (value % 10));
+                value /= 10;
+            } while (value != 0);
+            for (int i = start, j = size - 1; i < j; i++, j--) {
+                byte digit = bytes[i];
+                bytes[i] = bytes[j];
+                bytes[j] = digit;
+            }
+        }
+
+        private void appendPayload(String payload) {
+            int length = payload.length();
+            ensureCapacity(length);
+            for (int i = 0; i < length; i++) {
+                char character = payload.charAt(i);
+                if (character >= 0x80) {
+                    //Not an ASCII string -> let the charset of the console decide, same way PrintStream does.
+                    append(payload.substring(i).getBytes(Charset.defaultCharset()));
+                    return;
+                }
+                bytes[size++] = (byte) character;
+            }
+        }
+
+        private void ensureCapacity(int extra) {
+            if (bytes.length - size < extra) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+}
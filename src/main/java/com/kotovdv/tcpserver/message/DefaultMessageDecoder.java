@@ -0,0 +1,62 @@
+package com.kotovdv.tcpserver.message;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Resumable decoder for the message structure described in {@link DefaultMessageDeserializer}.
+ * <p>
+ * Messages, which are completely present in the buffer, are decoded directly from it.
+ * Message split between several buffers is accumulated until its termination char arrives.
+ */
+public class DefaultMessageDecoder extends FrameDecoder<Message> {
+
+    private static final int INITIAL_SCRATCH_CAPACITY = 64;
+
+    //Bytes of direct buffers have to be copied before string creation.
+    private byte[] scratch;
+
+    public DefaultMessageDecoder() {
+        this(Integer.MAX_VALUE);
+    }
+
+    private DefaultMessageDecoder(int maxFrameSize) {
+        super(maxFrameSize);
+    }
+
+    /**
+     * Factory is used instead of constructor, so that {@code DefaultMessageDecoder::new} stays an unambiguous decoder factory.
+     * Invalid max frame size is rejected right away, instead of failing every connection.
+     *
+     * @param maxFrameSize Max size of the whole frame including header and termination char.
+     * @return Factory of decoders, which reject longer frames.
+     */
+    public static Supplier<DefaultMessageDecoder> withMaxFrameSize(int maxFrameSize) {
+        checkMaxFrameSize(maxFrameSize);
+        return () -> new DefaultMessageDecoder(maxFrameSize);
+    }
+
+    @Override
+    void emit(ByteBuffer frame, int start, int payloadLength, Consumer<? super Message> consumer) {
+        consumer.accept(new Message(
+                frame.get(start),
+                frame.getShort(start + 1),
+                frame.getInt(start + 3),
+                readString(frame, start + HEADER_SIZE, payloadLength)
+        ));
+    }
+
+    private String readString(ByteBuffer buffer, int offset, int length) {
+        if (buffer.hasArray())
+            return new String(buffer.array(), buffer.arrayOffset() + offset, length, StandardCharsets.ISO_8859_1);
+
+        if (scratch == null || scratch.length < length) {
+            scratch = new byte[Math.max(INITIAL_SCRATCH_CAPACITY, length)];
+        }
+        buffer.position(offset);
+        buffer.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.ISO_8859_1);
+    }
+}
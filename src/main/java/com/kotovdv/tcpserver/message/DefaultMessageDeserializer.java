@@ -5,6 +5,9 @@ import com.kotovdv.tcpserver.core.message.MessageDeserializer;
 import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Optional;
 
 /**
@@ -17,11 +20,41 @@ import java.util.Optional;
  * - User ID (4 byte integer)
  * <p>
  * - Payload (variable length ASCII string)
+ * <p>
+ * Payload of streams supporting mark, e.g. buffered ones, is read ahead in bulk and scanned for termination char
+ * in a scratch buffer of the reading thread. Other streams are read byte by byte.
+ * Frames longer than max frame size are rejected before their termination char is found.
+ * Repetitive payloads of the bulk read may be deduplicated with {@link PayloadCache}.
  */
 public class DefaultMessageDeserializer implements MessageDeserializer<Message> {
 
     public static final char PAYLOAD_TERMINATION_CHAR = '\0';
 
+    static final int HEADER_SIZE = 7;
+
+    private final int maxPayloadSize;
+    private final PayloadCache payloadCache;
+    private final ThreadLocal<PayloadBuffer> payloadBuffer = ThreadLocal.withInitial(PayloadBuffer::new);
+
+    public DefaultMessageDeserializer() {
+        this(Integer.MAX_VALUE);
+    }
+
+    public DefaultMessageDeserializer(int maxFrameSize) {
+        this(maxFrameSize, null);
+    }
+
+    /**
+     * @param maxFrameSize Max size of the whole frame including header and termination char.
+     * @param payloadCache Cache of repetitive payloads or null if each payload has to be a new string.
+     */
+    public DefaultMessageDeserializer(int maxFrameSize, PayloadCache payloadCache) {
+        if (maxFrameSize <= HEADER_SIZE)
+            throw new IllegalArgumentException("Illegal max frame size value " + maxFrameSize);
+        this.maxPayloadSize = maxFrameSize == Integer.MAX_VALUE ? Integer.MAX_VALUE : maxFrameSize - HEADER_SIZE - 1;
+        this.payloadCache = payloadCache;
+    }
+
     @Override
     public Optional<Message> readNext(DataInputStream stream) throws IOException {
         return read(stream);
@@ -33,16 +66,7 @@ public class DefaultMessageDeserializer implements MessageDeserializer<Message>
         try {
             byte version = in.readByte();
             readStarted = true;
-            short messageType = in.readShort();
-            int userId = in.readInt();
-            String payload = readPayload(in);
-
-            return Optional.of(new Message(
-                    version,
-                    messageType,
-                    userId,
-                    payload
-            ));
+            return Optional.of(readFrame(version, in));
         } catch (EOFException e) {
             if (readStarted) {
                 //If stream/socket was closed prematurely -> rethrow exception.
@@ -53,14 +77,95 @@ public class DefaultMessageDeserializer implements MessageDeserializer<Message>
         }
     }
 
+    /**
+     * Reads the rest of the frame, which follows the version.
+     */
+    Message readFrame(byte version, DataInputStream in) throws IOException {
+        short messageType = in.readShort();
+        int userId = in.readInt();
+        String payload = readPayload(in);
+
+        return new Message(
+                version,
+                messageType,
+                userId,
+                payload
+        );
+    }
+
     private String readPayload(DataInputStream in) throws IOException {
+        if (!in.markSupported())
+            return readPayloadByteByByte(in);
+
+        PayloadBuffer buffer = payloadBuffer.get();
+        int size = 0;
+        int chunk = buffer.expectedChunk();
+
+        while (true) {
+            buffer.ensureCapacity(size + chunk);
+
+            //Stream is read ahead in chunks, so we have to be able to return bytes past termination char.
+            in.mark(chunk);
+            int read = in.read(buffer.bytes, size, chunk);
+            if (read < 0)
+                throw new EOFException();
+
+            int terminator = PayloadScanner.indexOfTermination(buffer.view, size, size + read);
+            if (terminator > maxPayloadSize || (terminator < 0 && size + read > maxPayloadSize))
+                throw payloadTooLarge();
+            if (terminator >= 0) {
+                in.reset();
+                in.skipBytes(terminator - size + 1);
+                buffer.lastPayloadSize = terminator;
+                return payloadCache != null
+                        ? payloadCache.get(buffer.bytes, 0, terminator)
+                        : new String(buffer.bytes, 0, terminator, StandardCharsets.ISO_8859_1);
+            }
+
+            size += read;
+            chunk = Math.min(chunk * 2, PayloadBuffer.MAX_CHUNK);
+        }
+    }
+
+    private String readPayloadByteByByte(DataInputStream in) throws IOException {
         StringBuilder payload = new StringBuilder();
         char currentChar;
 
-        while ((currentChar = (char) in.readByte()) != PAYLOAD_TERMINATION_CHAR) {
+        while ((currentChar = (char) (in.readByte() & 0xFF)) != PAYLOAD_TERMINATION_CHAR) {
+            if (payload.length() == maxPayloadSize)
+                throw payloadTooLarge();
             payload.append(currentChar);
         }
 
         return payload.toString();
     }
+
+    private IOException payloadTooLarge() {
+        return new IOException("Payload exceeds max size of " + maxPayloadSize + " bytes");
+    }
+
+    /**
+     * Scratch buffer for payload bytes, reused by all the messages read by the same thread.
+     */
+    private static final class PayloadBuffer {
+
+        private static final int MIN_CHUNK = 16;
+        private static final int MAX_CHUNK = 1024;
+
+        private byte[] bytes = new byte[MAX_CHUNK];
+        private ByteBuffer view = ByteBuffer.wrap(bytes);
+        //Payloads tend to be of similar size, so size of the previous one is used to guess the amount to read ahead.
+        private int lastPayloadSize;
+
+        int expectedChunk() {
+            return Math.max(MIN_CHUNK, Math.min(lastPayloadSize + 1, MAX_CHUNK));
+        }
+
+        void ensureCapacity(int capacity) {
+            if (bytes.length >= capacity)
+                return;
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, capacity));
+            view = ByteBuffer.wrap(bytes);
+        }
+    }
 }
@@ -0,0 +1,95 @@
+package com.kotovdv.tcpserver.message;
+
+import com.kotovdv.tcpserver.core.message.MessageSerializer;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Serializer for the message structure read by {@link DefaultMessageDeserializer}.
+ * <p>
+ * Payload is copied in bulk as single byte characters, so payloads with characters above 0xFF or with the termination
+ * character are rejected before anything is written.
+ * Direct buffers receive payload through a scratch array of the writing thread.
+ */
+public class DefaultMessageSerializer implements MessageSerializer<Message> {
+
+    private static final int HEADER_SIZE = 7;
+
+    private final ThreadLocal<PayloadScratch> scratch = ThreadLocal.withInitial(PayloadScratch::new);
+
+    @Override
+    public int sizeOf(Message message) {
+        return HEADER_SIZE + message.payload.length() + 1;
+    }
+
+    @Override
+    public void serialize(Message message, ByteBuffer buffer) {
+        int length = message.payload.length();
+        if (buffer.remaining() < HEADER_SIZE + length + 1)
+            throw new BufferOverflowException();
+        checkPayload(message.payload, true);
+
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try {
+            buffer.put(message.version)
+                    .putShort(message.messageType)
+                    .putInt(message.userId);
+        } finally {
+            buffer.order(order);
+        }
+
+        putPayload(message.payload, buffer);
+        buffer.put((byte) DefaultMessageDeserializer.PAYLOAD_TERMINATION_CHAR);
+    }
+
+    /**
+     * @param terminated Whether payload is followed by the termination character, which it can not contain then.
+     */
+    static void checkPayload(String payload, boolean terminated) {
+        for (int i = 0; i < payload.length(); i++) {
+            char c = payload.charAt(i);
+            if (c > 0xFF || (terminated && c == DefaultMessageDeserializer.PAYLOAD_TERMINATION_CHAR))
+                throw new IllegalArgumentException("Illegal payload char value " + (int) c + " at " + i);
+        }
+    }
+
+    /**
+     * Puts payload chars as single bytes, buffer is expected to have enough space and payload to be checked.
+     */
+    void putPayload(String payload, ByteBuffer buffer) {
+        int length = payload.length();
+        if (buffer.hasArray()) {
+            int offset = buffer.arrayOffset() + buffer.position();
+            copyPayload(payload, buffer.array(), offset);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = scratch.get().bytes(length);
+            copyPayload(payload, bytes, 0);
+            buffer.put(bytes, 0, length);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void copyPayload(String payload, byte[] target, int offset) {
+        //The only bulk copy of single byte strings into existing array, without charset encoder or allocation.
+        payload.getBytes(0, payload.length(), target, offset);
+    }
+
+    /**
+     * Scratch array for payload bytes of direct buffers, reused by all the messages written by the same thread.
+     */
+    private static final class PayloadScratch {
+
+        private byte[] bytes = new byte[256];
+
+        byte[] bytes(int length) {
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(bytes.length * 2, length)];
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.kotovdv.tcpserver.message;
+
+import com.kotovdv.tcpserver.core.message.MessageDecoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.Consumer;
+
+/**
+ * Splits received bytes into frames of the message structure described in {@link DefaultMessageDeserializer}.
+ * <p>
+ * Frames, which are completely present in the buffer, are passed on directly from it.
+ * Frame split between several buffers is accumulated in the decoder until its termination char arrives.
+ * Frames longer than max frame size are rejected before their termination char is found,
+ * so client, which never sends it, can not make the decoder grow without bound.
+ */
+abstract class FrameDecoder<T> implements MessageDecoder<T> {
+
+    static final int HEADER_SIZE = 7;
+    private static final int INITIAL_PARTIAL_CAPACITY = 64;
+    private static final int MAX_RETAINED_PARTIAL_CAPACITY = 1024;
+
+    private final int maxPayloadSize;
+
+    //Bytes of incomplete frame in write mode, its position is the amount of bytes received so far.
+    private ByteBuffer partial;
+    private boolean hasPartial;
+
+    /**
+     * @param maxFrameSize Max size of the whole frame including header and termination char.
+     */
+    FrameDecoder(int maxFrameSize) {
+        checkMaxFrameSize(maxFrameSize);
+        this.maxPayloadSize = maxFrameSize == Integer.MAX_VALUE ? Integer.MAX_VALUE : maxFrameSize - HEADER_SIZE - 1;
+    }
+
+    static void checkMaxFrameSize(int maxFrameSize) {
+        if (maxFrameSize <= HEADER_SIZE)
+            throw new IllegalArgumentException("Illegal max frame size value " + maxFrameSize);
+    }
+
+    @Override
+    public final void decode(ByteBuffer buffer, Consumer<? super T> consumer) throws IOException {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try {
+            while (buffer.hasRemaining()) {
+                boolean decoded = hasPartial
+                        ? decodePartial(buffer, consumer)
+                        : decodeComplete(buffer, consumer);
+                if (!decoded)
+                    return;
+            }
+        } finally {
+            buffer.order(order);
+        }
+    }
+
+    @Override
+    public final boolean hasPartialMessage() {
+        return hasPartial;
+    }
+
+    /**
+     * Transforms complete frame to the message and passes it to the consumer.
+     *
+     * @param frame         Big endian buffer containing the frame. Its position may be changed freely.
+     * @param start         Absolute index of the first byte of the frame.
+     * @param payloadLength Amount of payload bytes, which follow the header.
+     */
+    abstract void emit(ByteBuffer frame, int start, int payloadLength, Consumer<? super T> consumer);
+
+    /**
+     * Decodes frame straight from the buffer, if it is there in full.
+     * Otherwise remaining bytes of the buffer are kept as partial frame.
+     *
+     * @return false if buffer does not contain complete frame.
+     */
+    private boolean decodeComplete(ByteBuffer buffer, Consumer<? super T> consumer) throws IOException {
+        int start = buffer.position();
+        int payloadStart = start + HEADER_SIZE;
+
+        int terminator = payloadStart < buffer.limit()
+                ? PayloadScanner.indexOfTermination(buffer, payloadStart, buffer.limit())
+                : -1;
+        checkPayloadSize(terminator < 0 ? buffer.limit() - payloadStart : terminator - payloadStart);
+        if (terminator < 0) {
+            appendPartial(buffer, buffer.remaining());
+            return false;
+        }
+
+        emit(buffer, start, terminator - payloadStart, consumer);
+        buffer.position(terminator + 1);
+
+        return true;
+    }
+
+    /**
+     * Appends buffer bytes to the partial frame until its termination char.
+     *
+     * @return true if frame was completed.
+     */
+    private boolean decodePartial(ByteBuffer buffer, Consumer<? super T> consumer) throws IOException {
+        int headerMissing = Math.max(0, HEADER_SIZE - partial.position());
+        int scanStart = buffer.position() + headerMissing;
+
+        int terminator = scanStart < buffer.limit()
+                ? PayloadScanner.indexOfTermination(buffer, scanStart, buffer.limit())
+                : -1;
+        int frameEnd = terminator < 0 ? buffer.limit() : terminator;
+        checkPayloadSize(partial.position() + frameEnd - buffer.position() - HEADER_SIZE);
+        if (terminator < 0) {
+            appendPartial(buffer, buffer.remaining());
+            return false;
+        }
+
+        appendPartial(buffer, terminator - buffer.position());
+        buffer.position(terminator + 1);
+
+        partial.flip();
+        emit(partial, 0, partial.limit() - HEADER_SIZE, consumer);
+        releasePartial();
+
+        return true;
+    }
+
+    /**
+     * @param payloadSize Size of the payload received so far, negative while header is incomplete.
+     */
+    private void checkPayloadSize(int payloadSize) throws IOException {
+        if (payloadSize <= maxPayloadSize)
+            return;
+        //Connection is going to be closed, there is no point in keeping the frame.
+        partial = null;
+        hasPartial = false;
+        throw new IOException("Payload exceeds max size of " + maxPayloadSize + " bytes");
+    }
+
+    private void appendPartial(ByteBuffer buffer, int amount) {
+        if (partial == null) {
+            partial = ByteBuffer.allocate(Math.max(INITIAL_PARTIAL_CAPACITY, amount));
+        } else if (partial.remaining() < amount) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(partial.capacity() * 2, partial.position() + amount));
+            partial.flip();
+            grown.put(partial);
+            partial = grown;
+        }
+
+        int limit = buffer.limit();
+        buffer.limit(buffer.position() + amount);
+        partial.put(buffer);
+        buffer.limit(limit);
+
+        hasPartial = true;
+    }
+
+    private void releasePartial() {
+        hasPartial = false;
+        if (partial.capacity() > MAX_RETAINED_PARTIAL_CAPACITY) {
+            partial = null;
+        } else {
+            partial.clear();
+        }
+    }
+}
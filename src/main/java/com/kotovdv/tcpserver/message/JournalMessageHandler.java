@@ -0,0 +1,330 @@
+package com.kotovdv.tcpserver.message;
+
+import com.kotovdv.tcpserver.core.exception.TCPServerException;
+import com.kotovdv.tcpserver.core.message.MessageHandler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * Write ahead journal of the received messages, appended to memory mapped segments of the directory.
+ * <p>
+ * Appending a message is a copy into the mapped segment. Making it durable is done by the flusher thread,
+ * which forces the segment once force interval elapses or once force batch size of messages is appended,
+ * so a single force covers all the messages appended since the previous one. By default {@link #handle(Message)}
+ * waits until its message is forced, so message is durable once handler returns.
+ * <p>
+ * Segments are rolled once they are full, only the latest retained segments are kept.
+ * On start journal continues after the last valid record of the existing segments, which can be replayed with {@link JournalReader}.
+ */
+public class JournalMessageHandler implements MessageHandler<Message>, AutoCloseable {
+
+    private static final Logger log = LogManager.getLogger(JournalMessageHandler.class);
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int retainedSegments;
+    private final long forceIntervalNanos;
+    private final int forceBatchSize;
+    private final boolean awaitForce;
+    private final DefaultMessageSerializer payloadWriter = new DefaultMessageSerializer();
+    private final CRC32C checksum = new CRC32C();
+    private final Object lock = new Object();
+    private final Thread flusher;
+
+    //Guarded by lock.
+    private MappedByteBuffer segment;
+    private long nextSequence;
+    private long forcedSequence;
+    private boolean running = true;
+    private RuntimeException forceFailure;
+
+    private JournalMessageHandler(Builder builder) {
+        this.directory = builder.directory;
+        this.segmentSize = builder.segmentSize;
+        this.retainedSegments = builder.retainedSegments;
+        this.forceIntervalNanos = builder.forceIntervalNanos;
+        this.forceBatchSize = builder.forceBatchSize;
+        this.awaitForce = builder.awaitForce;
+
+        try {
+            Files.createDirectories(directory);
+            open();
+        } catch (IOException e) {
+            throw new TCPServerException("Failed to open journal at " + directory, e);
+        }
+
+        this.flusher = new Thread(this::flush, "journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public static Builder builder(Path directory) {
+        return new Builder(directory);
+    }
+
+    @Override
+    public void handle(Message message) {
+        int size = JournalSegment.recordSize(message);
+        if (size > segmentSize - Integer.BYTES)
+            throw new IllegalArgumentException("Message of " + size + " bytes does not fit into journal segment");
+        //Records are sized, so only characters, which do not fit into a byte, are rejected.
+        DefaultMessageSerializer.checkPayload(message.payload, false);
+
+        long sequence;
+        synchronized (lock) {
+            if (!running)
+                throw new IllegalStateException("Journal is closed");
+            checkForced();
+            //Zero size, which marks the end of the segment, has to fit after the record.
+            if (segment.remaining() < size + Integer.BYTES) {
+                roll();
+            }
+            JournalSegment.write(message, segment, payloadWriter, checksum);
+            sequence = nextSequence++;
+
+            if (nextSequence - forcedSequence >= forceBatchSize) {
+                lock.notifyAll();
+            }
+            if (!awaitForce)
+                return;
+
+            //Close forces the segment and moves forced sequence too, so waiting on it alone is enough.
+            try {
+                while (forcedSequence <= sequence) {
+                    checkForced();
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TCPServerException("Interrupted while waiting for journal force", e);
+            }
+        }
+    }
+
+    /**
+     * Fails appending and waiting once flusher failed to force the segment, as the messages are not durable.
+     */
+    private void checkForced() {
+        if (forceFailure != null)
+            throw new TCPServerException("Journal at " + directory + " failed to force messages", forceFailure);
+    }
+
+    /**
+     * @return Sequence number, which the next message is going to get.
+     */
+    public long nextSequence() {
+        synchronized (lock) {
+            return nextSequence;
+        }
+    }
+
+    /**
+     * Forces the messages appended so far and stops the flusher.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (!running)
+                return;
+            running = false;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            if (forceFailure != null)
+                return;
+            try {
+                segment.force();
+                forcedSequence = nextSequence;
+            } catch (RuntimeException e) {
+                forceFailure = e;
+                throw e;
+            } finally {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void flush() {
+        while (true) {
+            MappedByteBuffer forced;
+            long sequence;
+            synchronized (lock) {
+                long deadline = System.nanoTime() + forceIntervalNanos;
+                try {
+                    long remaining;
+                    while (running
+                            && nextSequence - forcedSequence < forceBatchSize
+                            && (remaining = deadline - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (!running)
+                    return;
+                if (nextSequence == forcedSequence)
+                    continue;
+                //Segments are forced once they are rolled, so forcing the current one covers everything appended so far.
+                forced = segment;
+                sequence = nextSequence;
+            }
+
+            //Appending goes on while segment is being forced.
+            try {
+                forced.force();
+            } catch (RuntimeException e) {
+                log.error("Failed to force journal segment at [{}]", directory, e);
+                synchronized (lock) {
+                    forceFailure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+
+            synchronized (lock) {
+                forcedSequence = Math.max(forcedSequence, sequence);
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Maps the last segment, positioned after its last valid record, or a new one if there are none.
+     */
+    private void open() throws IOException {
+        List<Path> segments = JournalSegment.list(directory);
+        if (segments.isEmpty()) {
+            this.segment = JournalSegment.map(JournalSegment.path(directory, 0), FileChannel.MapMode.READ_WRITE, segmentSize);
+            return;
+        }
+
+        Path last = segments.get(segments.size() - 1);
+        long sequence = JournalSegment.firstSequence(last);
+        MappedByteBuffer mapped = JournalSegment.map(last, FileChannel.MapMode.READ_WRITE, Math.max(segmentSize, Files.size(last)));
+        while (JournalSegment.read(mapped, checksum) != null) {
+            sequence++;
+        }
+        //Bytes of torn record are overwritten by the next one.
+        if (mapped.remaining() >= Integer.BYTES) {
+            mapped.putInt(mapped.position(), 0);
+        }
+
+        this.segment = mapped;
+        this.nextSequence = sequence;
+        this.forcedSequence = sequence;
+        log.info("Journal [{}] opened at sequence [{}]", directory, sequence);
+    }
+
+    private void roll() {
+        try {
+            segment.force();
+            forcedSequence = nextSequence;
+        } catch (RuntimeException e) {
+            forceFailure = e;
+            throw e;
+        } finally {
+            lock.notifyAll();
+        }
+
+        try {
+            segment = JournalSegment.map(JournalSegment.path(directory, nextSequence), FileChannel.MapMode.READ_WRITE, segmentSize);
+            deleteExpiredSegments();
+        } catch (IOException e) {
+            throw new TCPServerException("Failed to roll journal segment at " + directory, e);
+        }
+    }
+
+    private void deleteExpiredSegments() throws IOException {
+        List<Path> segments = JournalSegment.list(directory);
+        for (int i = 0; i < segments.size() - retainedSegments; i++) {
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    public static final class Builder {
+
+        private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+        private static final int DEFAULT_RETAINED_SEGMENTS = 16;
+        private static final long DEFAULT_FORCE_INTERVAL_MILLIS = 10;
+        private static final int DEFAULT_FORCE_BATCH_SIZE = 1024;
+
+        private final Path directory;
+        private int segmentSize = DEFAULT_SEGMENT_SIZE;
+        private int retainedSegments = DEFAULT_RETAINED_SEGMENTS;
+        private long forceIntervalNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_FORCE_INTERVAL_MILLIS);
+        private int forceBatchSize = DEFAULT_FORCE_BATCH_SIZE;
+        private boolean awaitForce = true;
+
+        private Builder(Path directory) {
+            this.directory = Objects.requireNonNull(directory, "Journal directory can not be null");
+        }
+
+        /**
+         * Size of each segment file, 64 MiB by default. Messages larger than a segment are rejected.
+         */
+        public Builder segmentSize(int segmentSize) {
+            if (segmentSize < 1024)
+                throw new IllegalArgumentException("Illegal segment size value " + segmentSize);
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * Amount of the latest segments kept once a new one is rolled, 16 by default.
+         */
+        public Builder retainedSegments(int retainedSegments) {
+            if (retainedSegments < 1)
+                throw new IllegalArgumentException("Illegal retained segments value " + retainedSegments);
+            this.retainedSegments = retainedSegments;
+            return this;
+        }
+
+        /**
+         * Max time appended message waits to be forced, 10 milliseconds by default.
+         */
+        public Builder forceInterval(long interval, TimeUnit unit) {
+            if (interval < 1)
+                throw new IllegalArgumentException("Illegal force interval value " + interval);
+            this.forceIntervalNanos = unit.toNanos(interval);
+            return this;
+        }
+
+        /**
+         * Amount of appended messages, which triggers force before the interval elapses, 1024 by default.
+         */
+        public Builder forceBatchSize(int forceBatchSize) {
+            if (forceBatchSize < 1)
+                throw new IllegalArgumentException("Illegal force batch size value " + forceBatchSize);
+            this.forceBatchSize = forceBatchSize;
+            return this;
+        }
+
+        /**
+         * Whether handle waits until the message is forced. If not, messages appended since the last force
+         * survive process crash, but may be lost with the OS.
+         */
+        public Builder awaitForce(boolean awaitForce) {
+            this.awaitForce = awaitForce;
+            return this;
+        }
+
+        public JournalMessageHandler build() {
+            return new JournalMessageHandler(this);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.kotovdv.tcpserver.message;
+
+import com.kotovdv.tcpserver.core.message.MessageHandler;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads messages of the journal written by {@link JournalMessageHandler} in order they were appended.
+ * <p>
+ * Segments are read up to their last valid record, so messages torn by a crash are skipped.
+ * Journal is expected not to be appended to while being read.
+ */
+public class JournalReader {
+
+    private final List<Path> segments;
+    private final CRC32C checksum = new CRC32C();
+
+    private int nextSegment;
+    private MappedByteBuffer segment;
+    private long sequence;
+
+    public JournalReader(Path directory) throws IOException {
+        this.segments = JournalSegment.list(directory);
+    }
+
+    /**
+     * @return Next message or Optional.empty if all the segments have been read.
+     */
+    public Optional<Message> readNext() throws IOException {
+        while (true) {
+            if (segment != null) {
+                Message message = JournalSegment.read(segment, checksum);
+                if (message != null) {
+                    sequence++;
+                    return Optional.of(message);
+                }
+            }
+            if (nextSegment == segments.size())
+                return Optional.empty();
+
+            Path path = segments.get(nextSegment++);
+            segment = JournalSegment.map(path, FileChannel.MapMode.READ_ONLY, -1);
+            sequence = JournalSegment.firstSequence(path);
+        }
+    }
+
+    /**
+     * @return Sequence number of the last read message plus one.
+     */
+    public long nextSequence() {
+        return sequence;
+    }
+
+    /**
+     * Passes all the remaining messages to the handler.
+     *
+     * @return Amount of replayed messages.
+     */
+    public long replay(MessageHandler<Message> handler) throws IOException {
+        long replayed = 0;
+        Optional<Message> message;
+        while ((message = readNext()).isPresent()) {
+            handler.handle(message.get());
+            replayed++;
+        }
+        return replayed;
+    }
+}
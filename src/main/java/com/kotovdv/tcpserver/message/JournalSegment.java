@@ -0,0 +1,127 @@
+package com.kotovdv.tcpserver.message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Format of the journal segments written by {@link JournalMessageHandler}.
+ * <p>
+ * Segment is a file of fixed size named after the sequence number of its first record. Each record consists of
+ * <p>
+ * - Body Size (4 byte integer)
+ * <p>
+ * - CRC32C of the body (4 byte integer)
+ * <p>
+ * - Body: Version (1 byte), Message Type (2 byte integer), User ID (4 byte integer), Payload (single byte chars)
+ * <p>
+ * New segment is zero filled, so zero size marks the end of written records. Record, which does not match its checksum,
+ * e.g. torn by a crash in the middle of the write, is treated as the end too.
+ */
+final class JournalSegment {
+
+    static final int RECORD_HEADER_SIZE = 8;
+    static final int BODY_HEADER_SIZE = 7;
+    private static final String SUFFIX = ".journal";
+
+    private JournalSegment() {
+    }
+
+    static Path path(Path directory, long firstSequence) {
+        return directory.resolve(String.format("%020d%s", firstSequence, SUFFIX));
+    }
+
+    static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * @return Segments of the directory in order of their records.
+     */
+    static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = new ArrayList<>();
+            files.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).forEach(segments::add);
+            segments.sort(null);
+            return segments;
+        }
+    }
+
+    static MappedByteBuffer map(Path segment, FileChannel.MapMode mode, long size) throws IOException {
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[]{StandardOpenOption.READ}
+                : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE};
+        try (FileChannel channel = FileChannel.open(segment, options)) {
+            MappedByteBuffer buffer = channel.map(mode, 0, size < 0 ? channel.size() : size);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            return buffer;
+        }
+    }
+
+    static int recordSize(Message message) {
+        return RECORD_HEADER_SIZE + BODY_HEADER_SIZE + message.payload.length();
+    }
+
+    /**
+     * Writes record at the position of the buffer, which is expected to have enough space.
+     */
+    static void write(Message message, ByteBuffer buffer, DefaultMessageSerializer payloadWriter, CRC32C checksum) {
+        int start = buffer.position();
+        int bodySize = BODY_HEADER_SIZE + message.payload.length();
+
+        buffer.position(start + RECORD_HEADER_SIZE);
+        buffer.put(message.version)
+                .putShort(message.messageType)
+                .putInt(message.userId);
+        payloadWriter.putPayload(message.payload, buffer);
+
+        checksum.reset();
+        checksum.update(buffer.duplicate().position(start + RECORD_HEADER_SIZE).limit(start + RECORD_HEADER_SIZE + bodySize));
+        //Size goes last, so that readers never see record without its checksum.
+        buffer.putInt(start + 4, (int) checksum.getValue());
+        buffer.putInt(start, bodySize);
+    }
+
+    /**
+     * Reads record at the position of the buffer and moves past it.
+     *
+     * @return null if there are no more valid records, position is left intact then.
+     */
+    static Message read(ByteBuffer buffer, CRC32C checksum) {
+        int start = buffer.position();
+        if (buffer.remaining() < RECORD_HEADER_SIZE)
+            return null;
+
+        int bodySize = buffer.getInt(start);
+        if (bodySize < BODY_HEADER_SIZE || bodySize > buffer.remaining() - RECORD_HEADER_SIZE)
+            return null;
+
+        int bodyStart = start + RECORD_HEADER_SIZE;
+        checksum.reset();
+        checksum.update(buffer.duplicate().position(bodyStart).limit(bodyStart + bodySize));
+        if ((int) checksum.getValue() != buffer.getInt(start + 4))
+            return null;
+
+        byte[] payload = new byte[bodySize - BODY_HEADER_SIZE];
+        buffer.get(bodyStart + BODY_HEADER_SIZE, payload);
+        Message message = new Message(
+                buffer.get(bodyStart),
+                buffer.getShort(bodyStart + 1),
+                buffer.getInt(bodyStart + 3),
+                new String(payload, StandardCharsets.ISO_8859_1)
+        );
+        buffer.position(bodyStart + bodySize);
+        return message;
+    }
+}
@@ -0,0 +1,99 @@
+package com.kotovdv.tcpserver.message;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Flyweight, which reads message fields straight from the buffer the message was received in.
+ * <p>
+ * Single instance is reused for all the messages of the connection, so view and its payload are valid
+ * only during {@link com.kotovdv.tcpserver.core.message.MessageHandler#handle(Object)} call.
+ * Handlers, which need to keep the message, should keep its {@link #copy()} instead.
+ */
+public final class MessageView {
+
+    private final Payload payload = new Payload();
+
+    private ByteBuffer buffer;
+    private int start;
+    private int payloadLength;
+
+    void wrap(ByteBuffer buffer, int start, int payloadLength) {
+        this.buffer = buffer;
+        this.start = start;
+        this.payloadLength = payloadLength;
+    }
+
+    public byte version() {
+        return buffer.get(start);
+    }
+
+    public short messageType() {
+        return buffer.getShort(start + 1);
+    }
+
+    public int userId() {
+        return buffer.getInt(start + 3);
+    }
+
+    public int payloadLength() {
+        return payloadLength;
+    }
+
+    public byte payloadByte(int index) {
+        if (index < 0 || index >= payloadLength)
+            throw new IndexOutOfBoundsException("Illegal payload index " + index);
+        return buffer.get(start + FrameDecoder.HEADER_SIZE + index);
+    }
+
+    /**
+     * @return Payload chars backed by the receive buffer. Instance is reused, same as the view itself.
+     */
+    public CharSequence payload() {
+        return payload;
+    }
+
+    /**
+     * @return Message with the same content, which stays valid after the view is reused.
+     */
+    public Message copy() {
+        return new Message(version(), messageType(), userId(), payload.toString());
+    }
+
+    @Override
+    public String toString() {
+        return "MessageView{" +
+                "version=" + version() +
+                ", messageType=" + messageType() +
+                ", userId=" + userId() +
+                ", payload='" + payload + '\'' +
+                '}';
+    }
+
+    private final class Payload implements CharSequence {
+
+        @Override
+        public int length() {
+            return payloadLength;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (payloadByte(index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            byte[] bytes = new byte[payloadLength];
+            for (int i = 0; i < payloadLength; i++) {
+                bytes[i] = buffer.get(start + FrameDecoder.HEADER_SIZE + i);
+            }
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
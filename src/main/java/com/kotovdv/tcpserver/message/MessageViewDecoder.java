@@ -0,0 +1,42 @@
+package com.kotovdv.tcpserver.message;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Resumable decoder, which does not allocate anything per message.
+ * <p>
+ * Every decoded message is exposed to the consumer through the same {@link MessageView} instance
+ * pointing either at the receive buffer or, for messages split between reads, at the decoder's own buffer.
+ */
+public class MessageViewDecoder extends FrameDecoder<MessageView> {
+
+    private final MessageView view = new MessageView();
+
+    public MessageViewDecoder() {
+        this(Integer.MAX_VALUE);
+    }
+
+    private MessageViewDecoder(int maxFrameSize) {
+        super(maxFrameSize);
+    }
+
+    /**
+     * Factory is used instead of constructor, so that {@code MessageViewDecoder::new} stays an unambiguous decoder factory.
+     * Invalid max frame size is rejected right away, instead of failing every connection.
+     *
+     * @param maxFrameSize Max size of the whole frame including header and termination char.
+     * @return Factory of decoders, which reject longer frames.
+     */
+    public static Supplier<MessageViewDecoder> withMaxFrameSize(int maxFrameSize) {
+        checkMaxFrameSize(maxFrameSize);
+        return () -> new MessageViewDecoder(maxFrameSize);
+    }
+
+    @Override
+    void emit(ByteBuffer frame, int start, int payloadLength, Consumer<? super MessageView> consumer) {
+        view.wrap(frame, start, payloadLength);
+        consumer.accept(view);
+    }
+}
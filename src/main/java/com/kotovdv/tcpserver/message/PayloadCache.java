@@ -0,0 +1,143 @@
+package com.kotovdv.tcpserver.message;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of payload strings, which returns the same instance for payloads made of the same bytes.
+ * <p>
+ * Open addressing table is looked up by the hash of the raw bytes, which are compared with chars of the cached strings,
+ * so hits allocate nothing. Each payload may be found only within a short probe window from its slot.
+ * Once the window is full, entry, which has not been hit since the previous eviction pass (CLOCK), is replaced.
+ * <p>
+ * Safe for concurrent use without locks: entries are immutable apart from their reference bit,
+ * so racing threads may only lose an insertion or a reference mark.
+ */
+public final class PayloadCache {
+
+    public static final int DEFAULT_MAX_PAYLOAD_LENGTH = 64;
+    private static final int PROBE_WINDOW = 8;
+
+    private final Entry[] entries;
+    private final int mask;
+    private final int maxPayloadLength;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public PayloadCache(int capacity) {
+        this(capacity, DEFAULT_MAX_PAYLOAD_LENGTH);
+    }
+
+    /**
+     * @param capacity         Max amount of cached payloads, rounded up to the power of two.
+     * @param maxPayloadLength Length of the longest payload to cache, longer ones are created every time.
+     */
+    public PayloadCache(int capacity, int maxPayloadLength) {
+        if (capacity < PROBE_WINDOW || capacity > 1 << 30)
+            throw new IllegalArgumentException("Illegal capacity value " + capacity);
+        if (maxPayloadLength < 0)
+            throw new IllegalArgumentException("Illegal max payload length value " + maxPayloadLength);
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.entries = new Entry[size];
+        this.mask = size - 1;
+        this.maxPayloadLength = maxPayloadLength;
+    }
+
+    /**
+     * @return Payload made of the given single byte chars, cached instance if there is one.
+     */
+    public String get(byte[] bytes, int offset, int length) {
+        if (length > maxPayloadLength)
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+
+        int hash = hash(bytes, offset, length);
+        for (int i = 0; i < PROBE_WINDOW; i++) {
+            Entry entry = entries[(hash + i) & mask];
+            if (entry != null && entry.hash == hash && entry.matches(bytes, offset, length)) {
+                if (!entry.referenced) {
+                    entry.referenced = true;
+                }
+                hits.increment();
+                return entry.payload;
+            }
+        }
+
+        misses.increment();
+        String payload = new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        entries[victim(hash)] = new Entry(hash, payload);
+        return payload;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Share of lookups, which returned cached payload.
+     */
+    public double hitRatio() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    /**
+     * @return Index of the free slot of the probe window or of the first one, which was not referenced since the last pass.
+     */
+    private int victim(int hash) {
+        for (int i = 0; i < PROBE_WINDOW; i++) {
+            int index = (hash + i) & mask;
+            if (entries[index] == null)
+                return index;
+        }
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < PROBE_WINDOW; i++) {
+                int index = (hash + i) & mask;
+                Entry entry = entries[index];
+                if (entry == null || !entry.referenced)
+                    return index;
+                entry.referenced = false;
+            }
+        }
+        return hash & mask;
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = length;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        //Spread higher bits, as only the lower ones select the slot.
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Entry {
+
+        private final int hash;
+        private final String payload;
+        private boolean referenced;
+
+        private Entry(int hash, String payload) {
+            this.hash = hash;
+            this.payload = payload;
+        }
+
+        boolean matches(byte[] bytes, int offset, int length) {
+            if (payload.length() != length)
+                return false;
+            for (int i = 0; i < length; i++) {
+                if (payload.charAt(i) != (bytes[offset + i] & 0xFF))
+                    return false;
+            }
+            return true;
+        }
+    }
+}
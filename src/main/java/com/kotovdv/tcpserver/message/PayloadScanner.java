@@ -0,0 +1,49 @@
+package com.kotovdv.tcpserver.message;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static com.kotovdv.tcpserver.message.DefaultMessageDeserializer.PAYLOAD_TERMINATION_CHAR;
+
+/**
+ * Searches for the payload termination char eight bytes at a time.
+ * <p>
+ * Each word is XORed with the termination char repeated in every byte, which turns matching bytes into zeroes,
+ * and then the classic "has zero byte" bit trick is applied to it.
+ * Words are processed in little endian order, so the lowest flagged byte is always the first real match.
+ */
+final class PayloadScanner {
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long PATTERN = ONES * (PAYLOAD_TERMINATION_CHAR & 0xFF);
+
+    private PayloadScanner() {
+    }
+
+    /**
+     * @return Absolute index of the first termination char within [from, to) or -1 if there is none.
+     */
+    static int indexOfTermination(ByteBuffer buffer, int from, int to) {
+        boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = buffer.getLong(i);
+            if (bigEndian) {
+                word = Long.reverseBytes(word);
+            }
+            long matches = word ^ PATTERN;
+            long found = (matches - ONES) & ~matches & HIGH_BITS;
+            if (found != 0)
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+        }
+
+        for (; i < to; i++) {
+            if (buffer.get(i) == PAYLOAD_TERMINATION_CHAR)
+                return i;
+        }
+
+        return -1;
+    }
+}
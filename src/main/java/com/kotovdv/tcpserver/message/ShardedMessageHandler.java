@@ -0,0 +1,33 @@
+package com.kotovdv.tcpserver.message;
+
+import com.kotovdv.tcpserver.core.message.MessageHandler;
+import com.kotovdv.tcpserver.core.pipeline.AsyncMessageHandler;
+import com.kotovdv.tcpserver.core.pipeline.BackpressurePolicy;
+
+import java.util.List;
+
+/**
+ * Dispatches messages of all connections to single threaded shards by user id.
+ * <p>
+ * All the messages of a user are handled by the same shard in order of arrival, while different users
+ * are handled in parallel. Every shard has its own handler instance, so per user state needs no locks.
+ * Readers are blocked while the shard queue is full, so no message is lost.
+ */
+public class ShardedMessageHandler extends AsyncMessageHandler<Message> {
+
+    /**
+     * @param shardHandlers Handlers of the shards, one shard per handler.
+     * @param queueCapacity Capacity of the queue of each shard, rounded up to the power of two.
+     */
+    public ShardedMessageHandler(List<? extends MessageHandler<Message>> shardHandlers,
+                                 int queueCapacity) {
+        super(shardHandlers, message -> message.userId, queueCapacity, BackpressurePolicy.BLOCK);
+    }
+
+    /**
+     * @return Index of the shard handling messages of the given user.
+     */
+    public int shardOf(int userId) {
+        return workerOf(userId);
+    }
+}
@@ -0,0 +1,110 @@
+package com.kotovdv.tcpserver.message;
+
+import com.kotovdv.tcpserver.core.message.MessageDeserializer;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * Deserializer, which chooses frame structure by the version of the message.
+ * <p>
+ * Version 2 frames carry payload length instead of termination char:
+ * <p>
+ * - Version (1 byte, always 2)
+ * <p>
+ * - Message Type (2 byte integer)
+ * <p>
+ * - User ID (4 byte integer)
+ * <p>
+ * - Payload Length (4 byte integer)
+ * <p>
+ * - Payload (ASCII string of the given length)
+ * <p>
+ * so payload is checked against max frame size before it is read, and then read in bulk with no scanning.
+ * Frames of any other version are read as described in {@link DefaultMessageDeserializer}, subject to the same max frame size.
+ */
+public class VersionedMessageDeserializer implements MessageDeserializer<Message> {
+
+    public static final byte LENGTH_PREFIXED_VERSION = 2;
+    public static final int DEFAULT_MAX_FRAME_SIZE = 64 * 1024;
+    static final int LENGTH_PREFIXED_HEADER_SIZE = 11;
+
+    private final int maxPayloadSize;
+    private final PayloadCache payloadCache;
+    private final DefaultMessageDeserializer terminatedDeserializer;
+    private final ThreadLocal<PayloadScratch> scratch = ThreadLocal.withInitial(PayloadScratch::new);
+
+    public VersionedMessageDeserializer() {
+        this(DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    public VersionedMessageDeserializer(int maxFrameSize) {
+        this(maxFrameSize, null);
+    }
+
+    /**
+     * @param maxFrameSize Max size of the whole frame including header.
+     * @param payloadCache Cache of repetitive payloads or null if each payload has to be a new string.
+     */
+    public VersionedMessageDeserializer(int maxFrameSize, PayloadCache payloadCache) {
+        if (maxFrameSize <= LENGTH_PREFIXED_HEADER_SIZE)
+            throw new IllegalArgumentException("Illegal max frame size value " + maxFrameSize);
+        this.maxPayloadSize = maxFrameSize - LENGTH_PREFIXED_HEADER_SIZE;
+        this.payloadCache = payloadCache;
+        this.terminatedDeserializer = new DefaultMessageDeserializer(maxFrameSize, payloadCache);
+    }
+
+    @Override
+    public Optional<Message> readNext(DataInputStream in) throws IOException {
+        int version = in.read();
+        if (version < 0)
+            return Optional.empty();
+
+        try {
+            if ((byte) version == LENGTH_PREFIXED_VERSION)
+                return Optional.of(readLengthPrefixed(in));
+            return Optional.of(terminatedDeserializer.readFrame((byte) version, in));
+        } catch (EOFException e) {
+            //Stream/socket was closed in the middle of the frame.
+            throw new IOException("InputStream ended prematurely", e);
+        }
+    }
+
+    private Message readLengthPrefixed(DataInputStream in) throws IOException {
+        short messageType = in.readShort();
+        int userId = in.readInt();
+        int length = in.readInt();
+        if (length < 0 || length > maxPayloadSize)
+            throw new IOException("Illegal payload length " + length + ", max size is " + maxPayloadSize + " bytes");
+
+        byte[] bytes = scratch.get().bytes(length);
+        in.readFully(bytes, 0, length);
+
+        return new Message(
+                LENGTH_PREFIXED_VERSION,
+                messageType,
+                userId,
+                payloadCache != null
+                        ? payloadCache.get(bytes, 0, length)
+                        : new String(bytes, 0, length, StandardCharsets.ISO_8859_1)
+        );
+    }
+
+    /**
+     * Scratch array for payload bytes, reused by all the messages read by the same thread.
+     */
+    private static final class PayloadScratch {
+
+        private byte[] bytes = new byte[256];
+
+        byte[] bytes(int length) {
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(bytes.length * 2, length)];
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.kotovdv.tcpserver.message;
+
+import com.kotovdv.tcpserver.core.message.MessageSerializer;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Serializer for the message structures read by {@link VersionedMessageDeserializer}.
+ * <p>
+ * Messages of version 2 are written with payload length, messages of any other version as {@link DefaultMessageSerializer} does.
+ */
+public class VersionedMessageSerializer implements MessageSerializer<Message> {
+
+    private final DefaultMessageSerializer terminatedSerializer = new DefaultMessageSerializer();
+
+    @Override
+    public int sizeOf(Message message) {
+        if (message.version != VersionedMessageDeserializer.LENGTH_PREFIXED_VERSION)
+            return terminatedSerializer.sizeOf(message);
+        return VersionedMessageDeserializer.LENGTH_PREFIXED_HEADER_SIZE + message.payload.length();
+    }
+
+    @Override
+    public void serialize(Message message, ByteBuffer buffer) {
+        if (message.version != VersionedMessageDeserializer.LENGTH_PREFIXED_VERSION) {
+            terminatedSerializer.serialize(message, buffer);
+            return;
+        }
+
+        int length = message.payload.length();
+        if (buffer.remaining() < VersionedMessageDeserializer.LENGTH_PREFIXED_HEADER_SIZE + length)
+            throw new BufferOverflowException();
+        DefaultMessageSerializer.checkPayload(message.payload, false);
+
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try {
+            buffer.put(message.version)
+                    .putShort(message.messageType)
+                    .putInt(message.userId)
+                    .putInt(length);
+        } finally {
+            buffer.order(order);
+        }
+        terminatedSerializer.putPayload(message.payload, buffer);
+    }
+}
@@ -0,0 +1,143 @@
+package com.kotovdv.tcpserver;
+
+import com.kotovdv.tcpserver.core.server.nio.ChannelConnectionHandler;
+import com.kotovdv.tcpserver.core.server.nio.NioServer;
+import com.kotovdv.tcpserver.message.DefaultMessageDecoder;
+import com.kotovdv.tcpserver.message.DefaultMessageDeserializer;
+import com.kotovdv.tcpserver.message.Message;
+import com.kotovdv.tcpserver.util.CountingMessageHandler;
+import com.kotovdv.tcpserver.util.TCPServerClient;
+import com.kotovdv.tcpserver.util.TCPUtil;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class NioServerTest {
+
+    private final DefaultMessageDeserializer deserializer = new DefaultMessageDeserializer();
+
+    /**
+     * Checking, that all the messages from single client are going to be received as is and in proper order by the server.
+     */
+    @Test
+    public void checkCommunicationWithSingleClient() throws InterruptedException {
+        int port = TCPUtil.findFreePort();
+        int messagesAmount = ThreadLocalRandom.current().nextInt(5, 10);
+
+        CountingMessageHandler handler = new CountingMessageHandler(new CountDownLatch(messagesAmount));
+        NioServer server = new NioServer(port, 1, new ChannelConnectionHandler<>(
+                handler,
+                deserializer
+        ));
+        server.start();
+
+        TCPServerClient client = TCPServerClient.create(port);
+
+        List<Message> messages = generateMessages(messagesAmount, 0);
+        for (Message message : messages) {
+            client.sendMessage(message);
+        }
+
+        handler.latch.await();
+        client.close();
+
+        server.stop(100, TimeUnit.MILLISECONDS);
+
+        SoftAssertions.assertSoftly(assertions -> {
+            assertions.assertThat(handler.storage).hasSize(messagesAmount);
+            for (int i = 0; i < handler.storage.size(); i++) {
+                Message expected = messages.get(i);
+                Message actual = handler.storage.get(i);
+                assertions.assertThat(actual).isEqualToComparingFieldByField(expected);
+            }
+        });
+    }
+
+    /**
+     * Checking, that messages from multiple clients sharing event loops are received in proper order per client.
+     */
+    @Test
+    public void checkCommunicationWithMultipleClients() throws InterruptedException {
+        int port = TCPUtil.findFreePort();
+        int clientsAmount = ThreadLocalRandom.current().nextInt(5, 10);
+        int messagesAmount = ThreadLocalRandom.current().nextInt(50, 100);
+
+        CountingMessageHandler handler = new CountingMessageHandler(new CountDownLatch(clientsAmount * messagesAmount));
+        NioServer server = new NioServer(port, 2, new ChannelConnectionHandler<>(
+                handler,
+                DefaultMessageDecoder::new
+        ));
+        server.start();
+
+        List<TCPServerClient> clients = new ArrayList<>();
+        List<List<Message>> messages = new ArrayList<>();
+        for (int i = 0; i < clientsAmount; i++) {
+            clients.add(TCPServerClient.create(port));
+            messages.add(generateMessages(messagesAmount, i));
+        }
+
+        for (int i = 0; i < messagesAmount; i++) {
+            for (int j = 0; j < clientsAmount; j++) {
+                clients.get(j).sendMessage(messages.get(j).get(i));
+            }
+        }
+
+        handler.latch.await();
+        clients.forEach(TCPServerClient::close);
+
+        server.stop(100, TimeUnit.MILLISECONDS);
+
+        SoftAssertions.assertSoftly(assertions -> {
+            assertions.assertThat(handler.storage).hasSize(clientsAmount * messagesAmount);
+            for (int i = 0; i < clientsAmount; i++) {
+                int userId = i;
+                List<Message> actual = handler.storage.stream()
+                        .filter(message -> message.userId == userId)
+                        .collect(Collectors.toList());
+
+                assertions.assertThat(actual)
+                        .usingFieldByFieldElementComparator()
+                        .containsExactlyElementsOf(messages.get(i));
+            }
+        });
+    }
+
+    private List<Message> generateMessages(int amount, int userId) {
+        List<Message> messages = new ArrayList<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < amount; i++) {
+            Message message = new Message(
+                    (byte) random.nextInt(-128, 127),
+                    (short) random.nextInt(-500, 500),
+                    userId,
+                    String.valueOf(random.nextInt())
+            );
+            messages.add(message);
+        }
+
+        return messages;
+    }
+
+    /**
+     * Checking, that invalid batch configuration is rejected once, instead of failing every connection.
+     */
+    @Test
+    public void checkInvalidBatchConfiguration() {
+        CountingMessageHandler handler = new CountingMessageHandler(new CountDownLatch(1));
+
+        assertThatThrownBy(() -> new ChannelConnectionHandler<>(handler, DefaultMessageDecoder::new, 0, 0, TimeUnit.MILLISECONDS))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ChannelConnectionHandler<>(handler, DefaultMessageDecoder::new, 16, -1, TimeUnit.MILLISECONDS))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ChannelConnectionHandler<>(handler, DefaultMessageDecoder::new, 16, 0, null))
+                .isInstanceOf(NullPointerException.class);
+    }
+}
@@ -1,8 +1,23 @@
 package com.kotovdv.tcpserver;
 
+import com.kotovdv.tcpserver.core.buffer.BufferPool;
+import com.kotovdv.tcpserver.core.buffer.ReceiveBufferSize;
+import com.kotovdv.tcpserver.core.exception.TCPServerException;
+import com.kotovdv.tcpserver.core.message.DuplexMessageHandler;
+import com.kotovdv.tcpserver.core.metrics.ConnectionMetrics;
+import com.kotovdv.tcpserver.core.metrics.MetricsRegistry;
+import com.kotovdv.tcpserver.core.ratelimit.RateLimit;
+import com.kotovdv.tcpserver.core.ratelimit.RateLimitPolicy;
+import com.kotovdv.tcpserver.core.ratelimit.RateLimiter;
+import com.kotovdv.tcpserver.core.server.AdmissionControl;
+import com.kotovdv.tcpserver.core.server.ConnectionContext;
+import com.kotovdv.tcpserver.core.server.ConnectionTimeouts;
+import com.kotovdv.tcpserver.core.server.DrainReport;
 import com.kotovdv.tcpserver.core.server.Server;
 import com.kotovdv.tcpserver.core.server.SocketConnectionHandler;
+import com.kotovdv.tcpserver.core.server.SocketOptions;
 import com.kotovdv.tcpserver.message.DefaultMessageDeserializer;
+import com.kotovdv.tcpserver.message.DefaultMessageSerializer;
 import com.kotovdv.tcpserver.message.Message;
 import com.kotovdv.tcpserver.util.CountingMessageHandler;
 import com.kotovdv.tcpserver.util.TCPServerClient;
@@ -10,14 +25,31 @@ import com.kotovdv.tcpserver.util.TCPUtil;
 import org.assertj.core.api.SoftAssertions;
 import org.junit.Test;
 
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class ServerTest {
 
+    private static final DuplexMessageHandler<Message, Message> SERVER_ACK = ServerTest::ack;
+
     private final DefaultMessageDeserializer deserializer = new DefaultMessageDeserializer();
 
     /**
@@ -57,6 +89,680 @@ public class ServerTest {
         });
     }
 
+    /**
+     * Checking, that messages are received as is and in proper order, when connection is handled by virtual thread.
+     */
+    @Test
+    public void checkCommunicationWithVirtualThreads() throws InterruptedException {
+        int port = TCPUtil.findFreePort();
+        int messagesAmount = ThreadLocalRandom.current().nextInt(5, 10);
+
+        CountingMessageHandler handler = new CountingMessageHandler(new CountDownLatch(messagesAmount));
+        Server server = Server.builder(port, 1, new SocketConnectionHandler<>(handler, deserializer))
+                .virtualThreads(true)
+                .build();
+        server.start();
+
+        TCPServerClient client = TCPServerClient.create(port);
+
+        List<Message> messages = generateMessages(messagesAmount);
+        for (Message message : messages) {
+            client.sendMessage(message);
+        }
+
+        handler.latch.await();
+        client.close();
+
+        server.stop(100, TimeUnit.MILLISECONDS);
+
+        assertThat(handler.storage)
+                .usingFieldByFieldElementComparator()
+                .containsExactlyElementsOf(messages);
+    }
+
+    /**
+     * Checking, that connection above max connections limit of virtual threads server is closed right away.
+     */
+    @Test
+    public void checkVirtualThreadsCapacityExceeded() throws IOException {
+        int port = TCPUtil.findFreePort();
+
+        Server server = Server.builder(port, 1, new SocketConnectionHandler<>(
+                new CountingMessageHandler(new CountDownLatch(1)),
+                deserializer
+        )).virtualThreads(true).build();
+        server.start();
+
+        TCPServerClient first = TCPServerClient.create(port);
+        try (Socket second = new Socket("localhost", port)) {
+            second.setSoTimeout(5000);
+            assertThat(second.getInputStream().read()).isEqualTo(-1);
+        } finally {
+            first.close();
+            server.stop(100, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Checking, that server reports connections, bytes and messages to its metrics, which are also readable over JMX.
+     */
+    @Test
+    public void checkMetrics() throws Exception {
+        int port = TCPUtil.findFreePort();
+        int messagesAmount = ThreadLocalRandom.current().nextInt(5, 10);
+
+        CountingMessageHandler handler = new CountingMessageHandler(new CountDownLatch(messagesAmount));
+        MetricsRegistry metrics = new MetricsRegistry();
+        metrics.registerMBean("server-test");
+        Server server = Server.builder(port, 1, new SocketConnectionHandler<>(handler, deserializer))
+                .metrics(metrics)
+                .build();
+        server.start();
+
+        TCPServerClient client = TCPServerClient.create(port);
+        List<Message> messages = generateMessages(messagesAmount);
+        long bytes = 0;
+        for (Message message : messages) {
+            client.sendMessage(message);
+            bytes += 7 + message.payload.length() + 1;
+        }
+
+        handler.latch.await();
+        client.close();
+        server.stop(100, TimeUnit.MILLISECONDS);
+
+        long expectedBytes = bytes;
+        ObjectName name = new ObjectName("com.kotovdv.tcpserver:type=ServerMetrics,name=\"server-test\"");
+        Object jmxMessages = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "MessagesDecoded");
+        metrics.close();
+
+        SoftAssertions.assertSoftly(assertions -> {
+            assertions.assertThat(metrics.getAcceptedConnections()).isEqualTo(1);
+            assertions.assertThat(metrics.getActiveConnections()).isZero();
+            assertions.assertThat(metrics.getBytesRead()).isEqualTo(expectedBytes);
+            assertions.assertThat(metrics.getMessagesDecoded()).isEqualTo(messagesAmount);
+            assertions.assertThat(metrics.getHandlerLatency().getCount()).isEqualTo(messagesAmount);
+            assertions.assertThat(jmxMessages).isEqualTo((long) messagesAmount);
+        });
+    }
+    /**
+     * Checking, that messages spanning refills of small pooled receive buffer are received as is,
+     * and that receive buffers are returned to the pool once connections are closed.
+     */
+    @Test
+    public void checkPooledReceiveBuffers() throws InterruptedException {
+        int port = TCPUtil.findFreePort();
+        int messagesAmount = 100;
+
+        CountingMessageHandler handler = new CountingMessageHandler(new CountDownLatch(messagesAmount * 2));
+        BufferPool bufferPool = new BufferPool(1024, 1024 * 1024, true);
+        Server server = Server.builder(port, 2, new SocketConnectionHandler<>(handler, deserializer))
+                .bufferPool(bufferPool)
+                .receiveBufferSize(256)
+                .build();
+        server.start();
+
+        List<Message> messages = generateMessages(messagesAmount);
+        for (int i = 0; i < 2; i++) {
+            TCPServerClient client = TCPServerClient.create(port);
+            client.sendMessages(messages);
+            client.close();
+        }
+
+        handler.latch.await();
+        server.stop(100, TimeUnit.MILLISECONDS);
+
+        List<Message> expected = new ArrayList<>(messages);
+        expected.addAll(messages);
+        assertThat(handler.storage)
+                .usingFieldByFieldElementComparator()
+                .containsExactlyInAnyOrderElementsOf(expected);
+        assertThat(bufferPool.borrowedBuffers()).isZero();
+    }
+    /**
+     * Checking, that large batch is received as is, while receive buffer adapts to it.
+     */
+    @Test
+    public void checkAdaptiveReceiveBuffer() throws InterruptedException {
+        int port = TCPUtil.findFreePort();
+        int messagesAmount = 5000;
+
+        CountingMessageHandler handler = new CountingMessageHandler(new CountDownLatch(messagesAmount));
+        Server server = Server.builder(port, 1, new SocketConnectionHandler<>(handler, deserializer))
+                .receiveBufferSize(ReceiveBufferSize.adaptive(256, 256, 16 * 1024))
+                .socketOptions(SocketOptions.builder().tcpNoDelay(true).keepAlive(true).build())
+                .build();
+        server.start();
+
+        TCPServerClient client = TCPServerClient.create(port);
+        List<Message> messages = generateMessages(messagesAmount);
+        client.sendMessages(messages);
+
+        handler.latch.await();
+        client.close();
+        server.stop(100, TimeUnit.MILLISECONDS);
+
+        assertThat(handler.storage)
+                .usingFieldByFieldElementComparator()
+                .containsExactlyElementsOf(messages);
+    }
+
+    /**
+     * Checking, that connection, which sends nothing for longer than read timeout, is closed by the server.
+     */
+    @Test
+    public void checkReadTimeout() throws IOException {
+        int port = TCPUtil.findFreePort();
+
+        Server server = Server.builder(port, 1, new SocketConnectionHandler<>(
+                new CountingMessageHandler(new CountDownLatch(1)),
+                deserializer
+        )).socketOptions(SocketOptions.builder().readTimeout(100, TimeUnit.MILLISECONDS).build()).build();
+        server.start();
+
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            assertThat(socket.getInputStream().read()).isEqualTo(-1);
+        } finally {
+            server.stop(100, TimeUnit.MILLISECONDS);
+        }
+    }
+    /**
+     * Checking, that connections are accepted and handled by all the acceptors sharing the port.
+     */
+    @Test
+    public void checkMultipleAcceptors() throws InterruptedException {
+        int port = TCPUtil.findFreePort();
+        int clientsAmount = 16;
+        int messagesAmount = 5;
+
+        CountingMessageHandler handler = new CountingMessageHandler(new CountDownLatch(clientsAmount * messagesAmount));
+        Server server = Server.builder(port, clientsAmount, new SocketConnectionHandler<>(handler, deserializer))
+                .acceptors(4)
+                .build();
+        server.start();
+
+        List<Message> expected = new ArrayList<>();
+        List<TCPServerClient> clients = new ArrayList<>();
+        for (int i = 0; i < clientsAmount; i++) {
+            List<Message> messages = generateMessages(messagesAmount);
+            TCPServerClient client = TCPServerClient.create(port);
+            client.sendMessages(messages);
+            clients.add(client);
+            expected.addAll(messages);
+        }
+
+        handler.latch.await();
+        clients.forEach(TCPServerClient::close);
+        server.stop(100, TimeUnit.MILLISECONDS);
+
+        assertThat(handler.storage)
+                .usingFieldByFieldElementComparator()
+                .containsExactlyInAnyOrderElementsOf(expected);
+    }
+
+    /**
+     * Checking, that connection above max connections waits for a free worker while there is room for pending connections,
+     * and that connection above max pending connections is closed right away.
+     */
+    @Test
+    public void checkPendingConnections() throws Exception {
+        int port = TCPUtil.findFreePort();
+        List<Message> messages = generateMessages(2);
+
+        CountingMessageHandler handler = new CountingMessageHandler(new CountDownLatch(messages.size()));
+        MetricsRegistry metrics = new MetricsRegistry();
+        Server server = Server.builder(port, 1, new SocketConnectionHandler<>(handler, deserializer))
+                .admissionControl(AdmissionControl.builder().maxPendingConnections(1).build())
+                .metrics(metrics)
+                .build();
+        server.start();
+
+        TCPServerClient first = TCPServerClient.create(port);
+        first.sendMessage(messages.get(0));
+        TCPServerClient pending = TCPServerClient.create(port);
+        pending.sendMessage(messages.get(1));
+
+        long pendingConnections;
+        try (Socket rejected = new Socket("localhost", port)) {
+            rejected.setSoTimeout(5000);
+            assertThat(rejected.getInputStream().read()).isEqualTo(-1);
+            pendingConnections = metrics.getPendingConnections();
+        } finally {
+            first.close();
+        }
+
+        handler.latch.await();
+        pending.close();
+        server.stop(100, TimeUnit.MILLISECONDS);
+
+        SoftAssertions.assertSoftly(assertions -> {
+            assertions.assertThat(pendingConnections).isEqualTo(1);
+            assertions.assertThat(metrics.getQueuedConnections()).isEqualTo(1);
+            assertions.assertThat(metrics.getPendingConnections()).isZero();
+            assertions.assertThat(metrics.getRejectedConnections()).isEqualTo(1);
+            assertions.assertThat(handler.storage)
+                    .usingFieldByFieldElementComparator()
+                    .containsExactlyElementsOf(messages);
+        });
+    }
+
+    /**
+     * Checking, that new connections are shed while in flight messages are above the limit.
+     */
+    @Test
+    public void checkLoadShedding() throws IOException {
+        int port = TCPUtil.findFreePort();
+        AtomicLong inFlightMessages = new AtomicLong(10);
+
+        MetricsRegistry metrics = new MetricsRegistry();
+        Server server = Server.builder(port, 1, new SocketConnectionHandler<>(
+                new CountingMessageHandler(new CountDownLatch(1)),
+                deserializer
+        )).admissionControl(AdmissionControl.builder().shedAbove(inFlightMessages::get, 5).build())
+                .metrics(metrics)
+                .build();
+        server.start();
+
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            assertThat(socket.getInputStream().read()).isEqualTo(-1);
+        } finally {
+            server.stop(100, TimeUnit.MILLISECONDS);
+        }
+
+        SoftAssertions.assertSoftly(assertions -> {
+            assertions.assertThat(metrics.getRejectedConnections()).isEqualTo(1);
+            assertions.assertThat(metrics.getAcceptedConnections()).isZero();
+        });
+    }
+
+    /**
+     * Checking, that silent client is disconnected after idle timeout, so its worker is handed over to pending connection.
+     */
+    @Test
+    public void checkIdleTimeout() throws Exception {
+        int port = TCPUtil.findFreePort();
+        List<Message> messages = generateMessages(1);
+
+        CountingMessageHandler handler = new CountingMessageHandler(new CountDownLatch(messages.size()));
+        Server server = Server.builder(port, 1, new SocketConnectionHandler<>(handler, deserializer))
+                .admissionControl(AdmissionControl.builder().maxPendingConnections(1).build())
+                .timeouts(ConnectionTimeouts.builder()
+                        .idleTimeout(200, TimeUnit.MILLISECONDS)
+                        .tickDuration(10, TimeUnit.MILLISECONDS)
+                        .build())
+                .build();
+        server.start();
+
+        try (Socket idle = new Socket("localhost", port)) {
+            idle.setSoTimeout(5000);
+            TCPServerClient client = TCPServerClient.create(port);
+            client.sendMessages(messages);
+
+            assertThat(isClosedByServer(idle)).isTrue();
+            handler.latch.await();
+            client.close();
+        } finally {
+            server.stop(100, TimeUnit.MILLISECONDS);
+        }
+
+        assertThat(handler.storage)
+                .usingFieldByFieldElementComparator()
+                .containsExactlyElementsOf(messages);
+    }
+
+    /**
+     * Checking, that client trickling bytes of a single message is disconnected after max partial frame time,
+     * even though it never breaks read timeout.
+     */
+    @Test
+    public void checkPartialFrameTimeout() throws Exception {
+        int port = TCPUtil.findFreePort();
+
+        Server server = Server.builder(port, 1, new SocketConnectionHandler<>(
+                new CountingMessageHandler(new CountDownLatch(1)),
+                deserializer
+        )).timeouts(ConnectionTimeouts.builder()
+                .readTimeout(1, TimeUnit.SECONDS)
+                .maxPartialFrameTime(200, TimeUnit.MILLISECONDS)
+                .tickDuration(10, TimeUnit.MILLISECONDS)
+                .build()
+        ).build();
+        server.start();
+
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            try {
+                //Message, which is never terminated, sent byte by byte.
+                for (byte value : new byte[]{1, 0, 1, 0, 0, 0, 1, 100}) {
+                    out.write(value);
+                    out.flush();
+                    Thread.sleep(50);
+                }
+            } catch (SocketException e) {
+                //Connection has already been closed by the server.
+            }
+
+            assertThat(isClosedByServer(socket)).isTrue();
+        } finally {
+            server.stop(100, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Checking, that drain handles all the messages received before it, wakes up idle connections
+     * and drops the incomplete message once it times out.
+     */
+    @Test
+    public void checkDrainAndStop() throws Exception {
+        int port = TCPUtil.findFreePort();
+        List<Message> messages = generateMessages(5);
+
+        CountDownLatch firstReceived = new CountDownLatch(1);
+        CountDownLatch drainStarted = new CountDownLatch(1);
+        CountingMessageHandler handler = new CountingMessageHandler(new CountDownLatch(messages.size()));
+        Server server = new Server(port, 2, new SocketConnectionHandler<>(message -> {
+            firstReceived.countDown();
+            try {
+                drainStarted.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            handler.handle(message);
+        }, deserializer));
+        server.start();
+
+        DefaultMessageSerializer serializer = new DefaultMessageSerializer();
+        ByteBuffer bytes = ByteBuffer.allocate(4096);
+        for (Message message : messages) {
+            serializer.serialize(message, bytes);
+        }
+        //Beginning of the message, which never ends.
+        bytes.put(new byte[]{1, 0, 1, 0, 0, 0, 1, 'x'});
+
+        DrainReport report;
+        try (Socket idle = new Socket("localhost", port);
+             Socket socket = new Socket("localhost", port)) {
+            socket.getOutputStream().write(bytes.array(), 0, bytes.position());
+            firstReceived.await();
+
+            CompletableFuture<DrainReport> drain = CompletableFuture.supplyAsync(() -> server.drainAndStop(1, TimeUnit.SECONDS));
+            //Idle connection is closed only once drain is started.
+            assertThat(isClosedByServer(idle)).isTrue();
+            drainStarted.countDown();
+            report = drain.get();
+        }
+
+        DrainReport drained = report;
+        SoftAssertions.assertSoftly(assertions -> {
+            //First message was being handled, when drain was started, so it is drained too.
+            assertions.assertThat(drained.drainedMessages()).isEqualTo(messages.size());
+            assertions.assertThat(drained.droppedMessages()).isEqualTo(1);
+            assertions.assertThat(drained.abortedConnections()).isEqualTo(1);
+            assertions.assertThat(handler.storage)
+                    .usingFieldByFieldElementComparator()
+                    .containsExactlyElementsOf(messages);
+        });
+    }
+
+    /**
+     * Checking, that drain keeps reading connection, which is blocked in the middle of a message,
+     * so bytes sent after drain was started are not lost.
+     */
+    @Test
+    public void checkDrainReadsBytesSentAfterStart() throws Exception {
+        int port = TCPUtil.findFreePort();
+        List<Message> messages = generateMessages(3);
+
+        CountDownLatch firstReceived = new CountDownLatch(1);
+        CountingMessageHandler handler = new CountingMessageHandler(new CountDownLatch(messages.size()));
+        Server server = new Server(port, 2, new SocketConnectionHandler<>(message -> {
+            handler.handle(message);
+            firstReceived.countDown();
+        }, deserializer));
+        server.start();
+
+        DefaultMessageSerializer serializer = new DefaultMessageSerializer();
+        ByteBuffer bytes = ByteBuffer.allocate(4096);
+        serializer.serialize(messages.get(0), bytes);
+        int split = bytes.position() + 8;
+        for (Message message : messages.subList(1, messages.size())) {
+            serializer.serialize(message, bytes);
+        }
+
+        DrainReport report;
+        try (Socket idle = new Socket("localhost", port);
+             Socket socket = new Socket("localhost", port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(bytes.array(), 0, split);
+            //Handler is blocked reading the rest of the second message.
+            firstReceived.await();
+
+            CompletableFuture<DrainReport> drain = CompletableFuture.supplyAsync(() -> server.drainAndStop(5, TimeUnit.SECONDS));
+            assertThat(isClosedByServer(idle)).isTrue();
+            out.write(bytes.array(), split, bytes.position() - split);
+            report = drain.get();
+        }
+
+        DrainReport drained = report;
+        SoftAssertions.assertSoftly(assertions -> {
+            assertions.assertThat(drained.drainedMessages()).isEqualTo(messages.size() - 1);
+            assertions.assertThat(drained.droppedMessages()).isZero();
+            assertions.assertThat(drained.abortedConnections()).isZero();
+            assertions.assertThat(handler.storage)
+                    .usingFieldByFieldElementComparator()
+                    .containsExactlyElementsOf(messages);
+        });
+    }
+
+    private static boolean isClosedByServer(Socket socket) throws IOException {
+        try {
+            return socket.getInputStream().read() == -1;
+        } catch (SocketException e) {
+            //Bytes sent after close are answered with reset.
+            return true;
+        }
+    }
+
+    /**
+     * Checking, that responses of duplex handler to pipelined messages are written back in order of the messages.
+     */
+    @Test
+    public void checkResponses() {
+        int port = TCPUtil.findFreePort();
+        int messagesAmount = ThreadLocalRandom.current().nextInt(5, 10);
+
+        Server server = new Server(port, 1, new SocketConnectionHandler<>(
+                SERVER_ACK,
+                deserializer,
+                new DefaultMessageSerializer()
+        ));
+        server.start();
+
+        TCPServerClient client = TCPServerClient.create(port);
+        List<Message> messages = generateMessages(messagesAmount);
+        try {
+            client.sendMessages(messages);
+
+            SoftAssertions.assertSoftly(assertions -> {
+                for (Message message : messages) {
+                    assertions.assertThat(client.receiveMessage()).isEqualToComparingFieldByField(ack(message));
+                }
+            });
+        } finally {
+            client.close();
+            server.stop(100, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Checking, that client, which reads its responses late, slows down reading of its messages instead of losing responses,
+     * also with read timeout, which makes connection use non blocking writes.
+     */
+    @Test
+    public void checkSlowResponseReader() throws Exception {
+        int port = TCPUtil.findFreePort();
+        //More responses than socket buffers of both sides can hold.
+        int messagesAmount = 200_000;
+
+        Server server = Server.builder(port, 1, new SocketConnectionHandler<>(
+                SERVER_ACK,
+                deserializer,
+                new DefaultMessageSerializer(),
+                1024
+        )).socketOptions(SocketOptions.builder().readTimeout(5, TimeUnit.SECONDS).build()).build();
+        server.start();
+
+        TCPServerClient client = TCPServerClient.create(port);
+        List<Message> messages = generateMessages(messagesAmount);
+        try {
+            CompletableFuture<Void> sent = CompletableFuture.runAsync(() -> client.sendMessages(messages));
+            Thread.sleep(200);
+
+            List<String> responses = new ArrayList<>();
+            for (int i = 0; i < messagesAmount; i++) {
+                responses.add(fieldsOf(client.receiveMessage()));
+            }
+            sent.get(10, TimeUnit.SECONDS);
+
+            //Field by field comparison of every element against every other one takes too long for so many messages.
+            assertThat(responses).isEqualTo(messages.stream()
+                    .map(message -> fieldsOf(ack(message)))
+                    .collect(Collectors.toList()));
+        } finally {
+            client.close();
+            server.stop(100, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Checking, that messages above the rate limit of their user are dropped, while messages of other users are not.
+     */
+    @Test
+    public void checkRateLimit() throws InterruptedException {
+        int port = TCPUtil.findFreePort();
+
+        CountingMessageHandler handler = new CountingMessageHandler(new CountDownLatch(4));
+        RateLimiter<Message> rateLimiter = RateLimiter.<Message>builder(RateLimitPolicy.DROP)
+                .perKey(message -> message.userId, RateLimit.of(1, 1, TimeUnit.HOURS, 3))
+                .build();
+        Server server = new Server(port, 1, new SocketConnectionHandler<>(handler, deserializer).rateLimited(rateLimiter));
+        server.start();
+
+        TCPServerClient client = TCPServerClient.create(port);
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            messages.add(new Message((byte) 1, (short) 1, 1, "message " + i));
+        }
+        messages.add(new Message((byte) 1, (short) 1, 2, "other user"));
+        client.sendMessages(messages);
+
+        assertThat(handler.latch.await(5, TimeUnit.SECONDS)).isTrue();
+        client.close();
+        server.stop(100, TimeUnit.MILLISECONDS);
+
+        assertThat(handler.storage)
+                .extracting(message -> message.payload)
+                .containsExactly("message 0", "message 1", "message 2", "other user");
+        assertThat(rateLimiter.droppedMessages()).isEqualTo(7);
+    }
+
+    /**
+     * Checking, that invalid batch configuration is rejected once, instead of failing every connection.
+     */
+    @Test
+    public void checkInvalidBatchConfiguration() {
+        CountingMessageHandler handler = new CountingMessageHandler(new CountDownLatch(1));
+
+        assertThatThrownBy(() -> new SocketConnectionHandler<>(handler, deserializer, 0, 0, TimeUnit.MILLISECONDS))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new SocketConnectionHandler<>(handler, deserializer, 16, -1, TimeUnit.MILLISECONDS))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Checking, that connection, which fails to open its response writer, is still closed and reported as closed.
+     */
+    @Test
+    public void checkResponseWriterFailureClosesConnection() throws IOException {
+        AtomicLong closedMetrics = new AtomicLong();
+        ConnectionMetrics metrics = new ConnectionMetrics() {
+            @Override
+            public boolean isEnabled() {
+                return false;
+            }
+
+            @Override
+            public void bytesRead(int amount) {
+            }
+
+            @Override
+            public void messageDecoded(long nanos) {
+            }
+
+            @Override
+            public void decodeFailed() {
+            }
+
+            @Override
+            public void handled(long nanos) {
+            }
+
+            @Override
+            public void close() {
+                closedMetrics.incrementAndGet();
+            }
+        };
+        Socket socket = new Socket() {
+            @Override
+            public InputStream getInputStream() {
+                return new ByteArrayInputStream(new byte[0]);
+            }
+
+            @Override
+            public OutputStream getOutputStream() throws IOException {
+                throw new IOException("Output is not available");
+            }
+        };
+        SocketConnectionHandler<Message> connectionHandler = new SocketConnectionHandler<>(SERVER_ACK, deserializer, new DefaultMessageSerializer());
+
+        assertThatThrownBy(() -> connectionHandler.handle(socket, new ConnectionContext(
+                metrics,
+                new BufferPool(),
+                ReceiveBufferSize.fixed(ConnectionContext.DEFAULT_RECEIVE_BUFFER_SIZE)
+        ))).isInstanceOf(TCPServerException.class);
+        assertThat(closedMetrics.get()).isEqualTo(1);
+        assertThat(socket.isClosed()).isTrue();
+    }
+
+    /**
+     * Checking, that connection closed before it is handled is still reported as closed.
+     */
+    @Test
+    public void checkClosedSocketIsReleased() throws IOException {
+        MetricsRegistry metrics = new MetricsRegistry();
+        Socket socket = new Socket();
+        socket.close();
+        SocketConnectionHandler<Message> connectionHandler = new SocketConnectionHandler<>(message -> {
+        }, deserializer);
+
+        assertThatThrownBy(() -> connectionHandler.handle(socket, new ConnectionContext(
+                metrics.connectionAccepted(null),
+                new BufferPool(),
+                ReceiveBufferSize.fixed(ConnectionContext.DEFAULT_RECEIVE_BUFFER_SIZE)
+        ))).isInstanceOf(TCPServerException.class);
+        assertThat(metrics.getActiveConnections()).isZero();
+    }
+
+    private static Message ack(Message message) {
+        return new Message(message.version, (short) (message.messageType + 1), message.userId, "ack " + message.payload);
+    }
+
+    private static String fieldsOf(Message message) {
+        return message.version + " " + message.messageType + " " + message.userId + " " + message.payload;
+    }
 
     private List<Message> generateMessages(int amount) {
         List<Message> messages = new ArrayList<>();
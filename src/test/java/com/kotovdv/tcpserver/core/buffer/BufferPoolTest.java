@@ -0,0 +1,90 @@
+package com.kotovdv.tcpserver.core.buffer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.SoftAssertions.assertSoftly;
+
+public class BufferPoolTest {
+
+    /**
+     * Requested sizes are rounded up to power of two size classes of direct buffers.
+     */
+    @Test
+    public void sizeClasses() {
+        BufferPool pool = new BufferPool(4096, 1024 * 1024, false);
+
+        assertSoftly(assertions -> {
+            assertions.assertThat(pool.acquire(1).buffer().capacity()).isEqualTo(256);
+            assertions.assertThat(pool.acquire(256).buffer().capacity()).isEqualTo(256);
+            assertions.assertThat(pool.acquire(257).buffer().capacity()).isEqualTo(512);
+            assertions.assertThat(pool.acquire(4096).buffer().capacity()).isEqualTo(4096);
+            assertions.assertThat(pool.acquire(5000).buffer().capacity()).isEqualTo(5000);
+            assertions.assertThat(pool.acquire(1).buffer().isDirect()).isTrue();
+        });
+    }
+
+    /**
+     * Released buffer is cleared and handed out again by the same thread, released handle can not be used anymore.
+     */
+    @Test
+    public void releasedBufferIsReused() {
+        BufferPool pool = new BufferPool(4096, 1024 * 1024, true);
+        PooledBuffer first = pool.acquire(1000);
+        ByteBuffer buffer = first.buffer();
+        buffer.putInt(42);
+        first.close();
+        first.close();
+
+        PooledBuffer second = pool.acquire(1024);
+        assertThat(second.buffer()).isSameAs(buffer);
+        assertThat(second.buffer().position()).isZero();
+        assertThat(pool.borrowedBuffers()).isEqualTo(1);
+        assertThatThrownBy(first::buffer).isInstanceOf(IllegalStateException.class);
+
+        second.close();
+        assertThat(pool.borrowedBuffers()).isZero();
+    }
+
+    /**
+     * Buffers, which do not fit into the thread cache, are kept in shared queues up to max pooled bytes.
+     */
+    @Test
+    public void pooledBytesAreLimited() throws InterruptedException {
+        BufferPool pool = new BufferPool(4096, 4096 * 3, false);
+        Thread thread = Thread.ofVirtual().start(() -> {
+            PooledBuffer[] buffers = new PooledBuffer[5];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = pool.acquire(4096);
+            }
+            for (PooledBuffer buffer : buffers) {
+                buffer.close();
+            }
+        });
+        thread.join();
+
+        assertThat(pool.pooledBytes()).isEqualTo(4096 * 3);
+    }
+
+    /**
+     * Buffer, which was garbage collected without being released, is reported as leaked.
+     */
+    @Test
+    public void leakIsDetected() throws InterruptedException {
+        BufferPool pool = new BufferPool(4096, 1024 * 1024, true);
+        pool.acquire(100);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (pool.leakedBuffers() == 0 && System.nanoTime() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertThat(pool.leakedBuffers()).isEqualTo(1);
+        assertThat(pool.borrowedBuffers()).isZero();
+    }
+}
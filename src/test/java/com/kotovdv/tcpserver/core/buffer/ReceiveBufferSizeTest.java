@@ -0,0 +1,54 @@
+package com.kotovdv.tcpserver.core.buffer;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ReceiveBufferSizeTest {
+
+    /**
+     * Size grows fast on full reads and shrinks only after two small reads in a row, staying within bounds.
+     */
+    @Test
+    public void adaptiveSize() {
+        ReceiveBufferSize.Sizer sizer = ReceiveBufferSize.adaptive(200, 1000, 10_000).newSizer();
+        assertThat(sizer.size()).isEqualTo(1024);
+
+        sizer.record(1024);
+        assertThat(sizer.size()).isEqualTo(4096);
+        sizer.record(4096);
+        assertThat(sizer.size()).isEqualTo(16384);
+        sizer.record(16384);
+        assertThat(sizer.size()).isEqualTo(16384);
+
+        sizer.record(100);
+        assertThat(sizer.size()).isEqualTo(16384);
+        sizer.record(100);
+        assertThat(sizer.size()).isEqualTo(8192);
+
+        sizer.record(100);
+        sizer.record(5000);
+        sizer.record(100);
+        assertThat(sizer.size()).isEqualTo(8192);
+
+        for (int i = 0; i < 20; i++) {
+            sizer.record(1);
+        }
+        assertThat(sizer.size()).isEqualTo(256);
+    }
+
+    /**
+     * Fixed size does not change.
+     */
+    @Test
+    public void fixedSize() {
+        ReceiveBufferSize.Sizer sizer = ReceiveBufferSize.fixed(1000).newSizer();
+        sizer.record(1000);
+        sizer.record(1);
+        sizer.record(1);
+
+        assertThat(sizer.size()).isEqualTo(1000);
+        assertThatThrownBy(() -> ReceiveBufferSize.adaptive(100, 10, 1000)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
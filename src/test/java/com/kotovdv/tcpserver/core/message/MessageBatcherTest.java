@@ -0,0 +1,69 @@
+package com.kotovdv.tcpserver.core.message;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MessageBatcherTest {
+
+    private final List<List<Integer>> batches = new ArrayList<>();
+    private final BatchMessageHandler<Integer> batchHandler = messages -> batches.add(new ArrayList<>(messages));
+
+    /**
+     * Batch is delivered as soon as it reaches max size, the rest waits for explicit flush.
+     */
+    @Test
+    public void batchIsDeliveredWhenFull() {
+        MessageBatcher<Integer> batcher = new MessageBatcher<>(batchHandler, 3, 1, TimeUnit.HOURS);
+        for (int i = 1; i <= 7; i++) {
+            batcher.add(i);
+        }
+
+        assertThat(batches).containsExactly(Arrays.asList(1, 2, 3), Arrays.asList(4, 5, 6));
+
+        batcher.flush();
+        assertThat(batches).containsExactly(Arrays.asList(1, 2, 3), Arrays.asList(4, 5, 6), Arrays.asList(7));
+    }
+
+    /**
+     * Batch, which first message waited longer than max linger, is delivered with the next added message.
+     */
+    @Test
+    public void batchIsDeliveredAfterLinger() throws InterruptedException {
+        MessageBatcher<Integer> batcher = new MessageBatcher<>(batchHandler, 100, 10, TimeUnit.MILLISECONDS);
+        batcher.add(1);
+        Thread.sleep(20);
+        batcher.add(2);
+
+        assertThat(batches).containsExactly(Arrays.asList(1, 2));
+    }
+
+    /**
+     * Flush of empty batch does not call the handler.
+     */
+    @Test
+    public void emptyFlush() {
+        MessageBatcher<Integer> batcher = new MessageBatcher<>(batchHandler, 10, 1, TimeUnit.HOURS);
+        batcher.flush();
+
+        assertThat(batches).isEmpty();
+    }
+
+    /**
+     * Regular handler receives every message right away.
+     */
+    @Test
+    public void regularHandlerIsNotBatched() {
+        List<Integer> handled = new ArrayList<>();
+        MessageBatcher<Integer> batcher = new MessageBatcher<>(handled::add, 10, 1, TimeUnit.HOURS);
+        batcher.add(1);
+        batcher.add(2);
+
+        assertThat(handled).containsExactly(1, 2);
+    }
+}
@@ -0,0 +1,98 @@
+package com.kotovdv.tcpserver.core.message;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MessageWriterTest {
+
+    private static final MessageSerializer<String> SERIALIZER = new MessageSerializer<String>() {
+        @Override
+        public int sizeOf(String message) {
+            return message.length();
+        }
+
+        @Override
+        public void serialize(String message, ByteBuffer buffer) {
+            for (int i = 0; i < message.length(); i++) {
+                buffer.put((byte) message.charAt(i));
+            }
+        }
+    };
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final List<Integer> writtenBuffers = new ArrayList<>();
+
+    /**
+     * Channel, which accepts at most 3 bytes per write.
+     */
+    private final GatheringByteChannel channel = new GatheringByteChannel() {
+        @Override
+        public long write(ByteBuffer[] sources, int offset, int length) {
+            writtenBuffers.add(length);
+            long written = 0;
+            for (int i = offset; i < offset + length && written < 3; i++) {
+                while (sources[i].hasRemaining() && written < 3) {
+                    output.write(sources[i].get());
+                    written++;
+                }
+            }
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] sources) {
+            return write(sources, 0, sources.length);
+        }
+
+        @Override
+        public int write(ByteBuffer source) {
+            return (int) write(new ByteBuffer[]{source});
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    /**
+     * Messages of a batch are packed into chunks, which are all written by gathering writes, even if the channel accepts only part of them.
+     */
+    @Test
+    public void batchIsWrittenFully() throws Exception {
+        MessageWriter<String> writer = new MessageWriter<>(SERIALIZER, channel, 4);
+        writer.add("ab");
+        writer.add("cd");
+        writer.add("efg");
+        writer.add("long message");
+        writer.flush();
+
+        assertThat(output.toString("US-ASCII")).isEqualTo("abcdefglong message");
+        assertThat(writtenBuffers.get(0)).isEqualTo(3);
+    }
+
+    /**
+     * Chunks are reused by the next batch, and nothing is written for empty batch.
+     */
+    @Test
+    public void chunksAreReused() throws Exception {
+        MessageWriter<String> writer = new MessageWriter<>(SERIALIZER, channel, 4);
+        writer.write("abc");
+        writer.flush();
+        writer.write("def");
+
+        assertThat(output.toString("US-ASCII")).isEqualTo("abcdef");
+        assertThat(writtenBuffers).containsExactly(1, 1);
+    }
+}
@@ -0,0 +1,81 @@
+package com.kotovdv.tcpserver.core.metrics;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.assertj.core.api.SoftAssertions.assertSoftly;
+
+public class LatencyHistogramTest {
+
+    /**
+     * Every value falls into the bucket, which covers it, with at most 1/64 relative error.
+     */
+    @Test
+    public void bucketsCoverValues() {
+        assertSoftly(assertions -> {
+            for (long value : new long[]{0, 1, 127, 128, 129, 255, 256, 1000, 123_456_789, Long.MAX_VALUE}) {
+                long highest = LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(value));
+                assertions.assertThat(highest).as("Highest value of %s", value).isGreaterThanOrEqualTo(value);
+                assertions.assertThat((double) (highest - value) / Math.max(1, value)).as("Error of %s", value).isLessThanOrEqualTo(1.0 / 64);
+            }
+        });
+    }
+
+    /**
+     * Percentiles of uniformly distributed values are within bucket precision.
+     */
+    @Test
+    public void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100_000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        LatencySnapshot snapshot = histogram.snapshot();
+        assertSoftly(assertions -> {
+            assertions.assertThat(snapshot.getCount()).isEqualTo(100_000);
+            assertions.assertThat(snapshot.getMean()).isEqualTo(50_000_500L);
+            assertions.assertThat((double) snapshot.getP50()).isCloseTo(50_000_000, within(50_000_000 / 64.0));
+            assertions.assertThat((double) snapshot.getP99()).isCloseTo(99_000_000, within(99_000_000 / 64.0));
+            assertions.assertThat(snapshot.getMax()).isEqualTo(100_000_000L);
+        });
+    }
+
+    /**
+     * Empty histogram reports zeros.
+     */
+    @Test
+    public void emptyHistogram() {
+        LatencySnapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertThat(snapshot.getCount()).isZero();
+        assertThat(snapshot.getP999()).isZero();
+    }
+
+    /**
+     * Interval snapshot covers only values recorded since the previous one, totals are not affected.
+     */
+    @Test
+    public void intervalSnapshot() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 1000; i++) {
+            histogram.record(1_000_000);
+        }
+        assertThat(histogram.intervalSnapshot().getCount()).isEqualTo(1000);
+
+        for (int i = 0; i < 10; i++) {
+            histogram.record(1000);
+        }
+
+        LatencySnapshot interval = histogram.intervalSnapshot();
+        assertSoftly(assertions -> {
+            assertions.assertThat(interval.getCount()).isEqualTo(10);
+            assertions.assertThat(interval.getMean()).isEqualTo(1000);
+            assertions.assertThat((double) interval.getP99()).isCloseTo(1000, within(1000 / 64.0));
+            assertions.assertThat((double) interval.getMax()).isCloseTo(1000, within(1000 / 64.0));
+        });
+        assertThat(histogram.intervalSnapshot().getCount()).isZero();
+        assertThat(histogram.snapshot().getCount()).isEqualTo(1010);
+    }
+}
@@ -0,0 +1,136 @@
+package com.kotovdv.tcpserver.core.pipeline;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AsyncMessageHandlerTest {
+
+    /**
+     * Messages with the same key sent by multiple threads should be handled in the order each thread sent them.
+     */
+    @Test
+    public void orderIsPreservedPerKey() throws InterruptedException {
+        int producersAmount = 4;
+        int messagesAmount = 10_000;
+        CountDownLatch latch = new CountDownLatch(producersAmount * messagesAmount);
+        Map<Integer, List<Integer>> handled = new ConcurrentHashMap<>();
+
+        //Key is the producer index, value is the sequence number within the producer.
+        AsyncMessageHandler<int[]> handler = new AsyncMessageHandler<>(message -> {
+            handled.computeIfAbsent(message[0], key -> new CopyOnWriteArrayList<>()).add(message[1]);
+            latch.countDown();
+        }, message -> message[0], 3, 64, BackpressurePolicy.BLOCK);
+
+        List<Thread> producers = new ArrayList<>();
+        for (int i = 0; i < producersAmount; i++) {
+            int key = i;
+            producers.add(new Thread(() -> {
+                for (int j = 0; j < messagesAmount; j++) {
+                    handler.handle(new int[]{key, j});
+                }
+            }));
+        }
+        producers.forEach(Thread::start);
+
+        assertThat(latch.await(30, TimeUnit.SECONDS)).isTrue();
+        handler.stop(1, TimeUnit.SECONDS);
+
+        List<Integer> expected = IntStream.range(0, messagesAmount).boxed().collect(Collectors.toList());
+        assertThat(handled).hasSize(producersAmount);
+        handled.values().forEach(sequence -> assertThat(sequence).isEqualTo(expected));
+        assertThat(handler.droppedMessages()).isZero();
+    }
+
+    /**
+     * When worker is stuck, messages above queue capacity are dropped and the first ones are kept.
+     */
+    @Test
+    public void dropNewestKeepsFirstMessages() throws InterruptedException {
+        List<Integer> handled = runWithStuckWorker(BackpressurePolicy.DROP_NEWEST);
+
+        //First message is taken by the stuck worker, the next four fill the queue.
+        assertThat(handled).containsExactly(0, 1, 2, 3, 4);
+    }
+
+    /**
+     * When worker is stuck, oldest queued messages are dropped in favour of the latest ones.
+     */
+    @Test
+    public void dropOldestKeepsLastMessages() throws InterruptedException {
+        List<Integer> handled = runWithStuckWorker(BackpressurePolicy.DROP_OLDEST);
+
+        assertThat(handled).containsExactly(0, 16, 17, 18, 19);
+    }
+
+    /**
+     * Messages still queued once stop times out and messages handed over after stop are counted as dropped.
+     */
+    @Test
+    public void stopCountsLeftoverMessages() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        List<Integer> handled = new CopyOnWriteArrayList<>();
+        AsyncMessageHandler<Integer> handler = new AsyncMessageHandler<>(message -> {
+            handled.add(message);
+            started.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, message -> 0, 1, 4, BackpressurePolicy.DROP_NEWEST);
+
+        handler.handle(0);
+        started.await();
+        for (int i = 1; i <= 4; i++) {
+            handler.handle(i);
+        }
+        handler.stop(50, TimeUnit.MILLISECONDS);
+        handler.handle(5);
+
+        //Interrupted worker drops its queue on exit, which happens after stop returns.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (handler.droppedMessages() < 5 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(handled).containsExactly(0);
+        assertThat(handler.droppedMessages()).isEqualTo(5);
+    }
+
+    private List<Integer> runWithStuckWorker(BackpressurePolicy policy) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> handled = new CopyOnWriteArrayList<>();
+
+        AsyncMessageHandler<Integer> handler = new AsyncMessageHandler<>(message -> {
+            handled.add(message);
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, message -> 0, 1, 4, policy);
+
+        handler.handle(0);
+        started.await();
+        for (int i = 1; i < 20; i++) {
+            handler.handle(i);
+        }
+        release.countDown();
+        handler.stop(5, TimeUnit.SECONDS);
+
+        assertThat(handler.droppedMessages()).isEqualTo(15);
+        return handled;
+    }
+}
@@ -0,0 +1,144 @@
+package com.kotovdv.tcpserver.core.ratelimit;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RateLimiterTest {
+
+    /**
+     * Bucket gives out burst of tokens at once and then a token per refill interval.
+     */
+    @Test
+    public void burstAndRefill() {
+        TokenBucket bucket = new TokenBucket(RateLimit.of(10, 1, TimeUnit.SECONDS, 3));
+        long now = System.nanoTime();
+        long interval = TimeUnit.MILLISECONDS.toNanos(100);
+
+        assertThat(bucket.tryAcquire(now)).isZero();
+        assertThat(bucket.tryAcquire(now)).isZero();
+        assertThat(bucket.tryAcquire(now)).isZero();
+        assertThat(bucket.tryAcquire(now)).isEqualTo(interval);
+        assertThat(bucket.tryAcquire(now + interval / 2)).isEqualTo(interval / 2);
+        assertThat(bucket.tryAcquire(now + interval)).isZero();
+        assertThat(bucket.tryAcquire(now + interval)).isEqualTo(interval);
+        //Idle bucket is refilled up to its burst only.
+        long later = now + TimeUnit.SECONDS.toNanos(10);
+        for (int i = 0; i < 3; i++) {
+            assertThat(bucket.tryAcquire(later)).isZero();
+        }
+        assertThat(bucket.tryAcquire(later)).isPositive();
+    }
+
+    /**
+     * Threads racing for tokens take exactly the burst of them.
+     */
+    @Test
+    public void concurrentAcquire() {
+        TokenBucket bucket = new TokenBucket(RateLimit.of(1, 1, TimeUnit.HOURS, 100));
+        AtomicLong acquired = new AtomicLong();
+
+        CompletableFuture<?>[] threads = new CompletableFuture<?>[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = CompletableFuture.runAsync(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    if (bucket.tryAcquire()) {
+                        acquired.incrementAndGet();
+                    }
+                }
+            });
+        }
+        CompletableFuture.allOf(threads).join();
+
+        assertThat(acquired.get()).isEqualTo(100);
+    }
+
+    /**
+     * Each key has a bucket of its own, keys without free or idle slot share the overflow bucket.
+     */
+    @Test
+    public void bucketsByKey() {
+        TokenBucketMap buckets = new TokenBucketMap(RateLimit.of(1, 1, TimeUnit.SECONDS, 1), 2);
+
+        TokenBucket first = buckets.get(1);
+        TokenBucket second = buckets.get(-1);
+        assertThat(first.tryAcquire()).isTrue();
+        assertThat(second.tryAcquire()).isTrue();
+        TokenBucket overflow = buckets.get(3);
+
+        assertThat(first).isNotSameAs(second).isNotSameAs(overflow);
+        assertThat(buckets.get(1)).isSameAs(first);
+        assertThat(buckets.get(-1)).isSameAs(second);
+        assertThat(buckets.get(4)).isSameAs(overflow);
+    }
+
+    /**
+     * Keys used once do not keep their slots, once their buckets are full again they are taken by new keys.
+     */
+    @Test
+    public void idleBucketsAreReclaimed() {
+        TokenBucketMap buckets = new TokenBucketMap(RateLimit.of(1, 1, TimeUnit.SECONDS, 1), 64);
+        long now = System.nanoTime();
+        for (int key = 0; key < 10_000; key++) {
+            buckets.get(key, now).tryAcquire(now);
+        }
+        TokenBucket overflow = buckets.get(-1, now);
+        overflow.tryAcquire(now);
+        assertThat(buckets.get(-2, now)).isSameAs(overflow);
+
+        long later = now + TimeUnit.SECONDS.toNanos(2);
+        TokenBucket tenant = buckets.get(-2, later);
+        assertThat(tenant).isNotSameAs(overflow);
+        assertThat(tenant.tryAcquire(later)).isZero();
+        assertThat(buckets.get(-2, later)).isSameAs(tenant);
+    }
+
+    /**
+     * Messages above the limit of their key are dropped and counted, limits of other keys are not affected.
+     */
+    @Test
+    public void dropPerKey() {
+        RateLimiter<Integer> limiter = RateLimiter.<Integer>builder(RateLimitPolicy.DROP)
+                .perKey(userId -> userId, RateLimit.of(1, 1, TimeUnit.HOURS, 2))
+                .build();
+        TokenBucket connection = limiter.newConnectionBucket();
+
+        int accepted = 0;
+        for (int i = 0; i < 5; i++) {
+            for (int userId = 1; userId <= 2; userId++) {
+                if (limiter.acquire(userId, connection)) {
+                    accepted++;
+                }
+            }
+        }
+
+        assertThat(connection).isNull();
+        assertThat(accepted).isEqualTo(4);
+        assertThat(limiter.droppedMessages()).isEqualTo(6);
+        assertThat(limiter.delayedMessages()).isZero();
+    }
+
+    /**
+     * Messages above the limit of their connection wait for tokens instead of being dropped.
+     */
+    @Test
+    public void delayPerConnection() {
+        RateLimiter<Integer> limiter = RateLimiter.<Integer>builder(RateLimitPolicy.DELAY)
+                .perConnection(RateLimit.of(100, 1, TimeUnit.SECONDS, 1))
+                .build();
+        TokenBucket connection = limiter.newConnectionBucket();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 11; i++) {
+            assertThat(limiter.acquire(i, connection)).isTrue();
+        }
+
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(limiter.delayedMessages()).isPositive();
+        assertThat(limiter.droppedMessages()).isZero();
+    }
+}
@@ -0,0 +1,65 @@
+package com.kotovdv.tcpserver.core.timer;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimingWheelTest {
+
+    /**
+     * Timeouts expire in order of their deadlines and never before them, including ones longer than a whole wheel.
+     */
+    @Test
+    public void expireInOrder() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel(5, TimeUnit.MILLISECONDS, 8, "test-wheel");
+        wheel.start();
+
+        List<Long> expired = new CopyOnWriteArrayList<>();
+        AtomicLong early = new AtomicLong();
+        CountDownLatch latch = new CountDownLatch(3);
+        long start = System.nanoTime();
+        for (long delay : new long[]{150, 20, 80}) {
+            wheel.schedule(() -> {
+                if (System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(delay)) {
+                    early.incrementAndGet();
+                }
+                expired.add(delay);
+                latch.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        wheel.stop();
+
+        assertThat(expired).containsExactly(20L, 80L, 150L);
+        assertThat(early.get()).isZero();
+    }
+
+    /**
+     * Cancelled timeout is never run.
+     */
+    @Test
+    public void cancel() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel(5, TimeUnit.MILLISECONDS, 8, "test-wheel");
+        wheel.start();
+
+        AtomicLong runs = new AtomicLong();
+        CountDownLatch latch = new CountDownLatch(1);
+        TimingWheel.Timeout cancelled = wheel.schedule(runs::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+        wheel.schedule(latch::countDown, 100, TimeUnit.MILLISECONDS);
+
+        assertThat(cancelled.cancel()).isTrue();
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        wheel.stop();
+
+        assertThat(cancelled.isCancelled()).isTrue();
+        assertThat(cancelled.cancel()).isFalse();
+        assertThat(runs.get()).isZero();
+    }
+}
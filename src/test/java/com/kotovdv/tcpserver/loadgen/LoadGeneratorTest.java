@@ -0,0 +1,55 @@
+package com.kotovdv.tcpserver.loadgen;
+
+import com.kotovdv.tcpserver.core.message.MessageHandler;
+import com.kotovdv.tcpserver.core.server.Server;
+import com.kotovdv.tcpserver.core.server.SocketConnectionHandler;
+import com.kotovdv.tcpserver.message.DefaultMessageDeserializer;
+import com.kotovdv.tcpserver.message.Message;
+import com.kotovdv.tcpserver.util.TCPUtil;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.SoftAssertions.assertSoftly;
+
+public class LoadGeneratorTest {
+
+    /**
+     * Every message sent at fixed rate is received by the server, and latency is reported for each of them.
+     */
+    @Test
+    public void fixedRateMessagesAreReceived() throws InterruptedException {
+        int port = TCPUtil.findFreePort();
+        LongAdder received = new LongAdder();
+        MessageHandler<Message> handler = message -> received.increment();
+        Server server = new Server(port, 2, new SocketConnectionHandler<>(handler, new DefaultMessageDeserializer()));
+        server.start();
+
+        LoadReport report;
+        try {
+            report = LoadGenerator.builder("localhost", port)
+                    .connections(2)
+                    .rate(2000)
+                    .duration(500, TimeUnit.MILLISECONDS)
+                    .payloadSize(16)
+                    .build()
+                    .run();
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (received.sum() < report.messages && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            server.stop(100, TimeUnit.MILLISECONDS);
+        }
+
+        LoadReport result = report;
+        assertSoftly(assertions -> {
+            assertions.assertThat(result.messages).isBetween(800L, 1200L);
+            assertions.assertThat(result.bytes).isEqualTo(result.messages * (7 + 16 + 1));
+            assertions.assertThat(received.sum()).isEqualTo(result.messages);
+            assertions.assertThat(result.latency.getCount()).isEqualTo(result.messages);
+        });
+    }
+}
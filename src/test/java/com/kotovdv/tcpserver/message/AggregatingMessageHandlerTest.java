@@ -0,0 +1,118 @@
+package com.kotovdv.tcpserver.message;
+
+import org.assertj.core.api.SoftAssertions;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AggregatingMessageHandlerTest {
+
+    /**
+     * Messages are counted and their values summed by user ID and message type, including negative ones.
+     */
+    @Test
+    public void aggregate() {
+        AggregatingMessageHandler handler = new AggregatingMessageHandler();
+        handler.handle(new Message((byte) 1, (short) 1, 7, "ab"));
+        handler.handle(new Message((byte) 1, (short) 1, 7, "abc"));
+        handler.handle(new Message((byte) 1, (short) 2, 7, "a"));
+        handler.handle(new Message((byte) 1, (short) -1, -7, "abcd"));
+
+        Aggregates aggregates = handler.snapshot();
+        AtomicLong visited = new AtomicLong();
+        aggregates.forEach((userId, messageType, count, sum) -> visited.addAndGet(count));
+
+        SoftAssertions.assertSoftly(assertions -> {
+            assertions.assertThat(aggregates.size()).isEqualTo(3);
+            assertions.assertThat(aggregates.count(7, (short) 1)).isEqualTo(2);
+            assertions.assertThat(aggregates.sum(7, (short) 1)).isEqualTo(5);
+            assertions.assertThat(aggregates.count(7, (short) 2)).isEqualTo(1);
+            assertions.assertThat(aggregates.count(-7, (short) -1)).isEqualTo(1);
+            assertions.assertThat(aggregates.sum(-7, (short) -1)).isEqualTo(4);
+            assertions.assertThat(aggregates.count(8, (short) 1)).isZero();
+            assertions.assertThat(visited.get()).isEqualTo(4);
+        });
+    }
+
+    /**
+     * Snapshot keeps aggregates, while drain resets them.
+     */
+    @Test
+    public void drain() {
+        AggregatingMessageHandler handler = new AggregatingMessageHandler(message -> 10);
+        handler.handle(new Message((byte) 1, (short) 1, 1, ""));
+
+        assertThat(handler.snapshot().sum(1, (short) 1)).isEqualTo(10);
+        assertThat(handler.drain().sum(1, (short) 1)).isEqualTo(10);
+        assertThat(handler.snapshot().isEmpty()).isTrue();
+    }
+
+    /**
+     * Messages of concurrent threads are neither lost nor counted twice by drains taken meanwhile.
+     */
+    @Test
+    public void concurrentDrains() {
+        AggregatingMessageHandler handler = new AggregatingMessageHandler(message -> message.userId, 2);
+        int threadsAmount = 4;
+        int messagesAmount = 100_000;
+        int usersAmount = 1000;
+
+        CompletableFuture<?>[] threads = new CompletableFuture<?>[threadsAmount];
+        for (int i = 0; i < threadsAmount; i++) {
+            threads[i] = CompletableFuture.runAsync(() -> {
+                for (int j = 0; j < messagesAmount; j++) {
+                    handler.handle(new Message((byte) 1, (short) 0, j % usersAmount, ""));
+                }
+            });
+        }
+        long[] counts = new long[usersAmount];
+        long[] sums = new long[usersAmount];
+        Aggregates.Visitor collector = (userId, messageType, count, sum) -> {
+            counts[userId] += count;
+            sums[userId] += sum;
+        };
+        while (!CompletableFuture.allOf(threads).isDone()) {
+            handler.drain().forEach(collector);
+        }
+        handler.drain().forEach(collector);
+
+        long perUser = (long) threadsAmount * messagesAmount / usersAmount;
+        SoftAssertions.assertSoftly(assertions -> {
+            for (int userId = 0; userId < usersAmount; userId++) {
+                assertions.assertThat(counts[userId]).isEqualTo(perUser);
+                assertions.assertThat(sums[userId]).isEqualTo(perUser * userId);
+            }
+        });
+    }
+
+    /**
+     * Reporter periodically receives aggregates of messages handled since the previous report.
+     */
+    @Test
+    public void reporting() throws InterruptedException {
+        AggregatingMessageHandler handler = new AggregatingMessageHandler();
+        CountDownLatch reported = new CountDownLatch(1);
+        AtomicReference<Aggregates> report = new AtomicReference<>();
+        handler.startReporting(aggregates -> {
+            if (!aggregates.isEmpty() && report.compareAndSet(null, aggregates)) {
+                reported.countDown();
+            }
+        }, 10, TimeUnit.MILLISECONDS);
+
+        handler.handle(new Message((byte) 1, (short) 3, 5, "payload"));
+        try {
+            assertThat(reported.await(5, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            handler.close();
+        }
+
+        assertThat(report.get().count(5, (short) 3)).isEqualTo(1);
+        assertThat(report.get().sum(5, (short) 3)).isEqualTo(7);
+    }
+}
@@ -0,0 +1,79 @@
+package com.kotovdv.tcpserver.message;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AsyncPrintingMessageHandlerTest {
+
+    /**
+     * Check messages handled by multiple threads are printed byte for byte the same way as by {@link PrintingMessageHandler}.
+     */
+    @Test
+    public void checkPrintingMatchesPrintingMessageHandler() throws InterruptedException {
+        List<Message> messages = new ArrayList<>();
+        messages.add(new Message((byte) 15, (short) 2342, 3453456, "Hello world"));
+        messages.add(new Message(Byte.MIN_VALUE, Short.MIN_VALUE, Integer.MIN_VALUE, ""));
+        messages.add(new Message(Byte.MAX_VALUE, Short.MAX_VALUE, Integer.MAX_VALUE, "Status: OK"));
+        messages.add(new Message((byte) 0, (short) -1, -10, "Caf\u00e9"));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        PrintingMessageHandler printingHandler = new PrintingMessageHandler(expected);
+        messages.forEach(printingHandler::handle);
+
+        //Threads print the same messages, so the output should be the expected one repeated.
+        int threadsAmount = 4;
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        AsyncPrintingMessageHandler handler = new AsyncPrintingMessageHandler(actual, 16, 1, TimeUnit.MILLISECONDS);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadsAmount; i++) {
+            threads.add(new Thread(() -> messages.forEach(handler::handle)));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        handler.stop(5, TimeUnit.SECONDS);
+
+        List<String> expectedMessages = new ArrayList<>();
+        for (int i = 0; i < threadsAmount; i++) {
+            expectedMessages.addAll(Arrays.asList(expected.toString().split("(?=Version: )")));
+        }
+        assertThat(actual.toString().split("(?=Version: )")).containsExactlyInAnyOrderElementsOf(expectedMessages);
+        assertThat(actual.size()).isEqualTo(expected.size() * threadsAmount);
+    }
+
+    /**
+     * Once output fails, messages are dropped and counted instead of blocking the handling threads on a full queue.
+     */
+    @Test
+    public void checkWriterFailureDropsMessages() throws InterruptedException {
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Output is closed");
+            }
+        };
+        AsyncPrintingMessageHandler handler = new AsyncPrintingMessageHandler(failing, 4, 1, TimeUnit.MILLISECONDS);
+
+        int messagesAmount = 100;
+        for (int i = 0; i < messagesAmount; i++) {
+            handler.handle(new Message((byte) 1, (short) 1, i, "message"));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (handler.droppedMessages() < messagesAmount && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        handler.stop(1, TimeUnit.SECONDS);
+        assertThat(handler.droppedMessages()).isEqualTo(messagesAmount);
+    }
+}
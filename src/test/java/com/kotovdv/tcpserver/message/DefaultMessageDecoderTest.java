@@ -0,0 +1,224 @@
+package com.kotovdv.tcpserver.message;
+
+import org.assertj.core.api.AutoCloseableSoftAssertions;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.SoftAssertions.assertSoftly;
+
+public class DefaultMessageDecoderTest {
+
+    private static final byte[] HELLO_MESSAGE = new byte[]{
+            10, //Version == 10
+            0, 127, //Message Type == 127
+            0, 0, 1, 0, //User ID == 256
+            72, 69, 76, 76, 79, //Payload == HELLO
+            DefaultMessageDeserializer.PAYLOAD_TERMINATION_CHAR
+    };
+
+    private final DefaultMessageDecoder decoder = new DefaultMessageDecoder();
+    private final List<Message> decoded = new ArrayList<>();
+
+    /**
+     * Empty buffer should result in no messages and no partial state.
+     */
+    @Test
+    public void emptyBuffer() throws IOException {
+        decoder.decode(ByteBuffer.allocate(0), decoded::add);
+
+        assertThat(decoded).isEmpty();
+        assertThat(decoder.hasPartialMessage()).isFalse();
+    }
+
+    /**
+     * Complete message in a single buffer is decoded right away and buffer is fully consumed.
+     */
+    @Test
+    public void completeMessage() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(HELLO_MESSAGE);
+        decoder.decode(buffer, decoded::add);
+
+        assertThat(buffer.hasRemaining()).isFalse();
+        assertThat(decoder.hasPartialMessage()).isFalse();
+        assertHelloMessage();
+    }
+
+    /**
+     * Complete message in a direct buffer is decoded the same way as in a heap one.
+     */
+    @Test
+    public void completeMessageInDirectBuffer() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HELLO_MESSAGE.length);
+        buffer.put(HELLO_MESSAGE).flip();
+        decoder.decode(buffer, decoded::add);
+
+        assertHelloMessage();
+    }
+
+    /**
+     * Message, which is split in two at any position, is decoded only after its second part arrives.
+     */
+    @Test
+    public void messageSplitAtEveryPosition() throws IOException {
+        for (int split = 1; split < HELLO_MESSAGE.length; split++) {
+            decoded.clear();
+
+            decoder.decode(ByteBuffer.wrap(HELLO_MESSAGE, 0, split), decoded::add);
+            assertThat(decoded).as("Check nothing is decoded after %d bytes", split).isEmpty();
+            assertThat(decoder.hasPartialMessage()).isTrue();
+
+            decoder.decode(ByteBuffer.wrap(HELLO_MESSAGE, split, HELLO_MESSAGE.length - split), decoded::add);
+            assertHelloMessage();
+            assertThat(decoder.hasPartialMessage()).isFalse();
+        }
+    }
+
+    /**
+     * Multiple messages fed to decoder one byte at a time are decoded in proper order.
+     */
+    @Test
+    public void multipleMessagesByteByByte() throws IOException {
+        int messagesCount = ThreadLocalRandom.current().nextInt(5, 20);
+        byte[] bytes = createMessages(messagesCount);
+
+        for (byte value : bytes) {
+            decoder.decode(ByteBuffer.wrap(new byte[]{value}), decoded::add);
+        }
+
+        assertMessages(messagesCount);
+    }
+
+    /**
+     * Multiple messages in a single buffer are all decoded within single call.
+     */
+    @Test
+    public void multipleMessagesInSingleBuffer() throws IOException {
+        int messagesCount = ThreadLocalRandom.current().nextInt(5, 20);
+
+        decoder.decode(ByteBuffer.wrap(createMessages(messagesCount)), decoded::add);
+
+        assertMessages(messagesCount);
+    }
+
+    /**
+     * Messages fed in chunks of random size, which do not match message boundaries, are decoded in proper order.
+     */
+    @Test
+    public void multipleMessagesInRandomChunks() throws IOException {
+        int messagesCount = ThreadLocalRandom.current().nextInt(20, 50);
+        byte[] bytes = createMessages(messagesCount);
+
+        int position = 0;
+        while (position < bytes.length) {
+            int chunk = Math.min(ThreadLocalRandom.current().nextInt(1, 20), bytes.length - position);
+            decoder.decode(ByteBuffer.wrap(bytes, position, chunk), decoded::add);
+            position += chunk;
+        }
+
+        assertMessages(messagesCount);
+    }
+
+    /**
+     * Frame, which reaches max frame size, is decoded, whether it is complete in the buffer or split between buffers.
+     */
+    @Test
+    public void frameOfMaxSize() throws IOException {
+        DefaultMessageDecoder limited = DefaultMessageDecoder.withMaxFrameSize(HELLO_MESSAGE.length).get();
+
+        limited.decode(ByteBuffer.wrap(HELLO_MESSAGE), decoded::add);
+        limited.decode(ByteBuffer.wrap(HELLO_MESSAGE, 0, 9), decoded::add);
+        limited.decode(ByteBuffer.wrap(HELLO_MESSAGE, 9, HELLO_MESSAGE.length - 9), decoded::add);
+
+        assertThat(decoded).hasSize(2);
+    }
+
+    /**
+     * Frame, which never ends, is rejected once it grows past max frame size, whether it arrives in one or many buffers.
+     */
+    @Test
+    public void frameLongerThanMaxSize() {
+        byte[] payload = new byte[16];
+        Arrays.fill(payload, (byte) 'X');
+
+        DefaultMessageDecoder whole = DefaultMessageDecoder.withMaxFrameSize(HELLO_MESSAGE.length - 1).get();
+        assertThatThrownBy(() -> whole.decode(ByteBuffer.wrap(HELLO_MESSAGE), decoded::add))
+                .isInstanceOf(IOException.class);
+
+        DefaultMessageDecoder split = DefaultMessageDecoder.withMaxFrameSize(100).get();
+        assertThatThrownBy(() -> {
+            split.decode(ByteBuffer.wrap(HELLO_MESSAGE, 0, 7), decoded::add);
+            for (int i = 0; i < 100; i++) {
+                split.decode(ByteBuffer.wrap(payload), decoded::add);
+            }
+        }).isInstanceOf(IOException.class);
+        assertThat(split.hasPartialMessage()).isFalse();
+        assertThat(decoded).isEmpty();
+    }
+
+    /**
+     * Max frame size has to leave room for the header and the termination char.
+     */
+    @Test
+    public void invalidMaxFrameSize() {
+        assertThatThrownBy(() -> DefaultMessageDecoder.withMaxFrameSize(7)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private void assertHelloMessage() {
+        assertSoftly(assertions -> {
+            assertions.assertThat(decoded).hasSize(1);
+            decoded.stream().findFirst().ifPresent(message -> {
+                assertions.assertThat(message.version).isEqualTo((byte) 10);
+                assertions.assertThat(message.messageType).isEqualTo((short) 127);
+                assertions.assertThat(message.userId).isEqualTo(256);
+                assertions.assertThat(message.payload).isEqualTo("HELLO");
+            });
+        });
+    }
+
+    private void assertMessages(int messagesCount) {
+        try (AutoCloseableSoftAssertions assertions = new AutoCloseableSoftAssertions()) {
+            assertions.assertThat(decoded).hasSize(messagesCount);
+            for (int i = 0; i < decoded.size(); i++) {
+                int identifier = i + 1;
+                Message message = decoded.get(i);
+                assertions.assertThat(message.version).isEqualTo((byte) identifier);
+                assertions.assertThat(message.messageType).isEqualTo((short) identifier);
+                assertions.assertThat(message.userId).isEqualTo(identifier);
+                assertions.assertThat(message.payload).hasSize(identifier);
+                assertions.assertThat(message.payload.chars()).containsOnly('A' + identifier % 26);
+            }
+            assertions.assertThat(decoder.hasPartialMessage()).isFalse();
+        }
+    }
+
+    /**
+     * Creates messages, where all fields of i-th message are equal to i and payload has i letters.
+     */
+    private byte[] createMessages(int amount) {
+        ByteBuffer buffer = ByteBuffer.allocate(amount * (DefaultMessageDecoder.HEADER_SIZE + amount + 1));
+
+        for (int i = 0; i < amount; i++) {
+            int identifier = i + 1;
+            buffer.put((byte) identifier);
+            buffer.putShort((short) identifier);
+            buffer.putInt(identifier);
+            for (int j = 0; j < identifier; j++) {
+                buffer.put((byte) ('A' + identifier % 26));
+            }
+            buffer.put((byte) DefaultMessageDeserializer.PAYLOAD_TERMINATION_CHAR);
+        }
+
+        buffer.flip();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
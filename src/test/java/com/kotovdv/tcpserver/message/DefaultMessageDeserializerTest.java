@@ -6,7 +6,9 @@ import org.junit.Test;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Optional;
 import java.util.concurrent.ThreadLocalRandom;
 
@@ -159,11 +161,75 @@ public class DefaultMessageDeserializerTest {
         }
     }
 
+    /**
+     * Payload longer than read ahead chunks of the deserializer should be read completely
+     * and the message after it should not be affected.
+     */
+    @Test
+    public void longPayloadFollowedByMessage() throws IOException {
+        int payloadSize = ThreadLocalRandom.current().nextInt(3000, 10000);
+        byte[] first = createMessage((byte) 1, payloadSize);
+        byte[] second = createMessage((byte) 2, 1);
+        byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+
+        DataInputStream stream = createInputStream(bytes);
+        Optional<Message> actualFirst = deserializer.readNext(stream);
+        Optional<Message> actualSecond = deserializer.readNext(stream);
+
+        assertSoftly(assertions -> {
+            assertions.assertThat(actualFirst).isPresent();
+            actualFirst.ifPresent(message -> {
+                assertions.assertThat(message.version).isEqualTo((byte) 1);
+                assertions.assertThat(message.payload).hasSize(payloadSize);
+            });
+            assertions.assertThat(actualSecond).isPresent();
+            actualSecond.ifPresent(message -> {
+                assertions.assertThat(message.version).isEqualTo((byte) 2);
+                assertions.assertThat(message.payload).hasSize(1);
+            });
+        });
+    }
+
+    /**
+     * Streams, which do not support mark, should be read the same way as buffered ones.
+     */
+    @Test
+    public void streamWithoutMarkSupport() throws IOException {
+        int messagesCount = ThreadLocalRandom.current().nextInt(5, 20);
+        DataInputStream stream = new DataInputStream(new FilterInputStream(new ByteArrayInputStream(createMessages(messagesCount))) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        });
+
+        int actualAmount = 0;
+        Optional<Message> current;
+        while ((current = deserializer.readNext(stream)).isPresent()) {
+            actualAmount++;
+            assertThat(current.get().payload).isEqualTo(String.valueOf((char) actualAmount));
+        }
+
+        assertThat(actualAmount).isEqualTo(messagesCount);
+    }
+
     private DataInputStream createInputStream(byte[] data) {
         ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(data);
         return new DataInputStream(new BufferedInputStream(byteArrayInputStream));
     }
 
+    private byte[] createMessage(byte identifier, int payloadSize) {
+        byte[] bytes = new byte[7 + payloadSize + 1];
+        bytes[0] = identifier;
+        for (int i = 0; i < payloadSize; i++) {
+            bytes[7 + i] = (byte) ('a' + i % 26);
+        }
+        bytes[bytes.length - 1] = DefaultMessageDeserializer.PAYLOAD_TERMINATION_CHAR;
+
+        return bytes;
+    }
+
     private byte[] createMessages(int amount) {
         int messageSize = 9;
         byte[] bytes = new byte[messageSize * amount];
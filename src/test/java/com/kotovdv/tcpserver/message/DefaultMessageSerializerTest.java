@@ -0,0 +1,101 @@
+package com.kotovdv.tcpserver.message;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DefaultMessageSerializerTest {
+
+    private static final byte[] HELLO_MESSAGE = new byte[]{
+            10, //Version == 10
+            0, 127, //Message Type == 127
+            0, 0, 1, 0, //User ID == 256
+            72, 69, 76, 76, 79, //Payload == HELLO
+            DefaultMessageDeserializer.PAYLOAD_TERMINATION_CHAR
+    };
+
+    private final DefaultMessageSerializer serializer = new DefaultMessageSerializer();
+    private final Message hello = new Message((byte) 10, (short) 127, 256, "HELLO");
+
+    /**
+     * Heap, direct and little endian buffers receive the same bytes, order of the buffer is kept.
+     */
+    @Test
+    public void messageIsSerialized() {
+        assertThat(serializer.sizeOf(hello)).isEqualTo(HELLO_MESSAGE.length);
+
+        for (ByteBuffer buffer : Arrays.asList(
+                ByteBuffer.allocate(64).position(3),
+                ByteBuffer.allocateDirect(64),
+                ByteBuffer.allocateDirect(64).order(ByteOrder.LITTLE_ENDIAN))) {
+            ByteOrder order = buffer.order();
+            int start = buffer.position();
+            serializer.serialize(hello, buffer);
+
+            byte[] bytes = new byte[buffer.position() - start];
+            buffer.flip().position(start);
+            buffer.get(bytes);
+            assertThat(bytes).containsExactly(HELLO_MESSAGE);
+            assertThat(buffer.order()).isEqualTo(order);
+        }
+    }
+
+    /**
+     * Serialized message is read back as is by the deserializer.
+     */
+    @Test
+    public void roundTrip() throws IOException {
+        Message message = new Message((byte) -1, (short) -300, Integer.MIN_VALUE, "\u00ff payload \u0001");
+        ByteBuffer buffer = ByteBuffer.allocate(serializer.sizeOf(message));
+        serializer.serialize(message, buffer);
+
+        Message actual = new DefaultMessageDeserializer()
+                .readNext(new DataInputStream(new ByteArrayInputStream(buffer.array())))
+                .orElseThrow(AssertionError::new);
+        assertThat(actual).isEqualToComparingFieldByField(message);
+    }
+
+    /**
+     * Message, which does not fit, is not written at all.
+     */
+    @Test
+    public void bufferOverflow() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HELLO_MESSAGE.length - 1);
+
+        assertThatThrownBy(() -> serializer.serialize(hello, buffer)).isInstanceOf(BufferOverflowException.class);
+        assertThat(buffer.position()).isZero();
+    }
+
+    /**
+     * Payload with the termination character would be split by the reader, so it is rejected before anything is written.
+     */
+    @Test
+    public void terminationCharInPayload() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+
+        assertThatThrownBy(() -> serializer.serialize(new Message((byte) 10, (short) 1, 1, "HEL\0LO"), buffer))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(buffer.position()).isZero();
+    }
+
+    /**
+     * Characters, which do not fit into a single byte, are rejected instead of being truncated.
+     */
+    @Test
+    public void wideCharInPayload() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+
+        assertThatThrownBy(() -> serializer.serialize(new Message((byte) 10, (short) 1, 1, "HEL\u0100LO"), buffer))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(buffer.position()).isZero();
+    }
+}
@@ -0,0 +1,159 @@
+package com.kotovdv.tcpserver.message;
+
+import com.kotovdv.tcpserver.core.exception.TCPServerException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JournalMessageHandlerTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Messages appended by several threads at once are all durable once handle returns and are replayed across segments.
+     */
+    @Test
+    public void appendAndReplay() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        int threads = 4;
+        int messagesPerThread = 100;
+
+        JournalMessageHandler journal = JournalMessageHandler.builder(directory)
+                .segmentSize(1024)
+                .forceInterval(1, TimeUnit.MILLISECONDS)
+                .forceBatchSize(16)
+                .build();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int thread = 0; thread < threads; thread++) {
+            int userId = thread;
+            executor.execute(() -> {
+                for (int i = 0; i < messagesPerThread; i++) {
+                    journal.handle(new Message((byte) 2, (short) i, userId, "payload " + i));
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        journal.close();
+
+        List<Message> replayed = replay(directory);
+        assertThat(replayed).hasSize(threads * messagesPerThread);
+        assertThat(JournalSegment.list(directory).size()).isGreaterThan(1);
+        for (int thread = 0; thread < threads; thread++) {
+            int userId = thread;
+            //Messages of each thread are kept in order of their appends.
+            assertThat(replayed.stream().filter(message -> message.userId == userId).map(message -> (int) message.messageType))
+                    .containsExactlyElementsOf(IntStream.range(0, messagesPerThread).boxed().collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * Only the latest retained segments are kept, replay starts from the first message of the oldest of them.
+     */
+    @Test
+    public void retention() throws IOException {
+        Path directory = folder.getRoot().toPath();
+
+        try (JournalMessageHandler journal = JournalMessageHandler.builder(directory)
+                .segmentSize(1024)
+                .retainedSegments(2)
+                .awaitForce(false)
+                .build()) {
+            for (int i = 0; i < 500; i++) {
+                journal.handle(new Message((byte) 1, (short) 0, i, "payload"));
+            }
+        }
+
+        List<Path> segments = JournalSegment.list(directory);
+        List<Message> replayed = replay(directory);
+        assertThat(segments).hasSize(2);
+        assertThat(replayed.get(0).userId).isEqualTo(JournalSegment.firstSequence(segments.get(0)));
+        assertThat(replayed.get(replayed.size() - 1).userId).isEqualTo(499);
+    }
+
+    /**
+     * Reopened journal continues after the last valid record, overwriting record torn by a crash.
+     */
+    @Test
+    public void recovery() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        JournalMessageHandler.Builder builder = JournalMessageHandler.builder(directory).segmentSize(1024);
+
+        try (JournalMessageHandler journal = builder.build()) {
+            for (int i = 0; i < 3; i++) {
+                journal.handle(new Message((byte) 1, (short) 0, i, "payload " + i));
+            }
+        }
+
+        //Corrupt payload of the last record, as if it was not completely written.
+        int recordSize = JournalSegment.recordSize(new Message((byte) 1, (short) 0, 0, "payload 0"));
+        try (FileChannel channel = FileChannel.open(JournalSegment.path(directory, 0), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), 3L * recordSize - 1);
+        }
+
+        try (JournalMessageHandler journal = builder.build()) {
+            assertThat(journal.nextSequence()).isEqualTo(2);
+            journal.handle(new Message((byte) 1, (short) 0, 3, "payload 3"));
+        }
+
+        assertThat(replay(directory))
+                .extracting(message -> message.userId)
+                .containsExactly(0, 1, 3);
+    }
+
+    /**
+     * Handler waiting for force returns once close forces its message, and fails instead of returning once interrupted.
+     */
+    @Test
+    public void awaitForceOnClose() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        JournalMessageHandler journal = JournalMessageHandler.builder(directory)
+                .segmentSize(1024)
+                .forceInterval(1, TimeUnit.HOURS)
+                .build();
+
+        CompletableFuture<Void> appended = CompletableFuture.runAsync(() -> journal.handle(new Message((byte) 1, (short) 0, 1, "closed")));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread interrupted = new Thread(() -> {
+            try {
+                journal.handle(new Message((byte) 1, (short) 0, 2, "interrupted"));
+            } catch (RuntimeException e) {
+                failure.set(e);
+            }
+        });
+        interrupted.start();
+        Thread.sleep(100);
+        interrupted.interrupt();
+        interrupted.join(5000);
+
+        assertThat(failure.get()).isInstanceOf(TCPServerException.class);
+        assertThat(appended).isNotDone();
+        journal.close();
+        appended.get(5, TimeUnit.SECONDS);
+        assertThat(replay(directory)).extracting(message -> message.payload).contains("closed");
+    }
+
+    private static List<Message> replay(Path directory) throws IOException {
+        List<Message> messages = new ArrayList<>();
+        new JournalReader(directory).replay(messages::add);
+        return messages;
+    }
+}
@@ -0,0 +1,69 @@
+package com.kotovdv.tcpserver.message;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.SoftAssertions.assertSoftly;
+
+public class MessageViewDecoderTest {
+
+    private static final byte[] HELLO_MESSAGE = new byte[]{
+            10, //Version == 10
+            0, 127, //Message Type == 127
+            0, 0, 1, 0, //User ID == 256
+            72, 69, 76, 76, 79, //Payload == HELLO
+            DefaultMessageDeserializer.PAYLOAD_TERMINATION_CHAR
+    };
+
+    private final MessageViewDecoder decoder = new MessageViewDecoder();
+
+    /**
+     * View of a complete message exposes its fields while it is handled.
+     */
+    @Test
+    public void viewOfCompleteMessage() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HELLO_MESSAGE.length);
+        buffer.put(HELLO_MESSAGE).flip();
+
+        List<String> seen = new ArrayList<>();
+        decoder.decode(buffer, view -> assertSoftly(assertions -> {
+            assertions.assertThat(view.version()).isEqualTo((byte) 10);
+            assertions.assertThat(view.messageType()).isEqualTo((short) 127);
+            assertions.assertThat(view.userId()).isEqualTo(256);
+            assertions.assertThat(view.payloadLength()).isEqualTo(5);
+            assertions.assertThat("HELLO".contentEquals(view.payload())).isTrue();
+            seen.add(view.payload().toString());
+        }));
+
+        assertThat(seen).containsExactly("HELLO");
+    }
+
+    /**
+     * Views of messages split between buffers expose the same content as complete ones,
+     * and their copies stay intact after the view is reused.
+     */
+    @Test
+    public void copiesOfSplitMessages() throws IOException {
+        List<Message> copies = new ArrayList<>();
+        List<MessageView> views = new ArrayList<>();
+
+        for (int split = 1; split < HELLO_MESSAGE.length; split++) {
+            decoder.decode(ByteBuffer.wrap(HELLO_MESSAGE, 0, split), view -> copies.add(view.copy()));
+            decoder.decode(ByteBuffer.wrap(HELLO_MESSAGE, split, HELLO_MESSAGE.length - split), view -> {
+                views.add(view);
+                copies.add(view.copy());
+            });
+        }
+
+        assertThat(views).hasSize(HELLO_MESSAGE.length - 1);
+        assertThat(views).allMatch(view -> view == views.get(0));
+        assertThat(copies).hasSize(HELLO_MESSAGE.length - 1);
+        assertThat(copies).allSatisfy(message -> assertThat(message)
+                .isEqualToComparingFieldByField(new Message((byte) 10, (short) 127, 256, "HELLO")));
+    }
+}
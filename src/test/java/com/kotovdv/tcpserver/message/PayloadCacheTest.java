@@ -0,0 +1,91 @@
+package com.kotovdv.tcpserver.message;
+
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PayloadCacheTest {
+
+    /**
+     * Payloads made of the same bytes are the same instance, hits and misses are counted.
+     */
+    @Test
+    public void samePayloadIsCached() {
+        PayloadCache cache = new PayloadCache(64);
+        byte[] bytes = "xxOKxxSTATUSxx\u00ff".getBytes(StandardCharsets.ISO_8859_1);
+
+        String ok = cache.get(bytes, 2, 2);
+        String status = cache.get(bytes, 6, 6);
+        String latin = cache.get(bytes, 14, 1);
+
+        assertThat(ok).isEqualTo("OK");
+        assertThat(status).isEqualTo("STATUS");
+        assertThat(latin).isEqualTo("\u00ff");
+        assertThat(cache.get("OK".getBytes(StandardCharsets.ISO_8859_1), 0, 2)).isSameAs(ok);
+        assertThat(cache.get(bytes, 6, 6)).isSameAs(status);
+        assertThat(cache.get(bytes, 14, 1)).isSameAs(latin);
+        assertThat(cache.hits()).isEqualTo(3);
+        assertThat(cache.misses()).isEqualTo(3);
+        assertThat(cache.hitRatio()).isEqualTo(0.5);
+    }
+
+    /**
+     * Payloads above max length are never cached.
+     */
+    @Test
+    public void longPayloadIsNotCached() {
+        PayloadCache cache = new PayloadCache(64, 4);
+        byte[] bytes = "LONG PAYLOAD".getBytes(StandardCharsets.ISO_8859_1);
+
+        String first = cache.get(bytes, 0, bytes.length);
+        String second = cache.get(bytes, 0, bytes.length);
+
+        assertThat(second).isEqualTo(first).isNotSameAs(first);
+        assertThat(cache.hits() + cache.misses()).isZero();
+    }
+
+    /**
+     * Cache stays correct once there are many more payloads than its capacity, and frequently hit payloads stay cached.
+     */
+    @Test
+    public void eviction() {
+        PayloadCache cache = new PayloadCache(16);
+        byte[] hot = "HOT".getBytes(StandardCharsets.ISO_8859_1);
+        String cachedHot = cache.get(hot, 0, hot.length);
+
+        for (int i = 0; i < 10_000; i++) {
+            byte[] cold = ("cold " + i).getBytes(StandardCharsets.ISO_8859_1);
+            assertThat(cache.get(cold, 0, cold.length)).isEqualTo("cold " + i);
+            assertThat(cache.get(hot, 0, hot.length)).isEqualTo("HOT");
+        }
+
+        assertThat(cache.get(hot, 0, hot.length)).isSameAs(cachedHot);
+    }
+
+    /**
+     * Deserializer with cache returns the same payload instance for the same payload bytes.
+     */
+    @Test
+    public void deserializerUsesCache() throws IOException {
+        Message message = new Message((byte) 1, (short) 1, 1, "ACK");
+        DefaultMessageSerializer serializer = new DefaultMessageSerializer();
+        ByteBuffer buffer = ByteBuffer.allocate(serializer.sizeOf(message) * 2);
+        serializer.serialize(message, buffer);
+        serializer.serialize(message, buffer);
+
+        DefaultMessageDeserializer deserializer = new DefaultMessageDeserializer(1024, new PayloadCache(64));
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new ByteArrayInputStream(buffer.array())));
+        Message first = deserializer.readNext(in).orElseThrow(AssertionError::new);
+        Message second = deserializer.readNext(in).orElseThrow(AssertionError::new);
+
+        assertThat(first.payload).isEqualTo("ACK");
+        assertThat(second.payload).isSameAs(first.payload);
+    }
+}
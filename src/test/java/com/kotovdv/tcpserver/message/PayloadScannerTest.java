@@ -0,0 +1,75 @@
+package com.kotovdv.tcpserver.message;
+
+import org.assertj.core.api.AutoCloseableSoftAssertions;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PayloadScannerTest {
+
+    /**
+     * Termination char should be found at any position of the word and in the tail after the last full word.
+     */
+    @Test
+    public void terminationAtEveryPosition() {
+        try (AutoCloseableSoftAssertions assertions = new AutoCloseableSoftAssertions()) {
+            for (int size = 1; size <= 40; size++) {
+                for (int position = 0; position < size; position++) {
+                    byte[] bytes = new byte[size];
+                    //Bytes around zero are the ones prone to false positives of the bit trick.
+                    for (int i = 0; i < size; i++) {
+                        bytes[i] = (byte) (i % 2 == 0 ? 0x01 : 0x80);
+                    }
+                    bytes[position] = DefaultMessageDeserializer.PAYLOAD_TERMINATION_CHAR;
+
+                    for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+                        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(order);
+                        assertions.assertThat(PayloadScanner.indexOfTermination(buffer, 0, size))
+                                .as("Check termination at %d of %d bytes in %s order", position, size, order)
+                                .isEqualTo(position);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Result of the scan should match the one of plain byte by byte search on random data.
+     */
+    @Test
+    public void matchesByteByByteSearch() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int attempt = 0; attempt < 1000; attempt++) {
+            byte[] bytes = new byte[random.nextInt(1, 100)];
+            random.nextBytes(bytes);
+            int from = random.nextInt(bytes.length);
+
+            int expected = -1;
+            for (int i = from; i < bytes.length; i++) {
+                if (bytes[i] == DefaultMessageDeserializer.PAYLOAD_TERMINATION_CHAR) {
+                    expected = i;
+                    break;
+                }
+            }
+
+            assertThat(PayloadScanner.indexOfTermination(ByteBuffer.wrap(bytes), from, bytes.length)).isEqualTo(expected);
+        }
+    }
+
+    /**
+     * Absence of termination char should result in -1.
+     */
+    @Test
+    public void noTermination() {
+        byte[] bytes = new byte[37];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) ('A' + i % 26);
+        }
+
+        assertThat(PayloadScanner.indexOfTermination(ByteBuffer.wrap(bytes), 0, bytes.length)).isEqualTo(-1);
+    }
+}
@@ -0,0 +1,86 @@
+package com.kotovdv.tcpserver.message;
+
+import com.kotovdv.tcpserver.core.message.MessageHandler;
+import org.assertj.core.api.AutoCloseableSoftAssertions;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardedMessageHandlerTest {
+
+    /**
+     * Every user is handled by a single shard in order of arrival, every shard is called by a single thread.
+     */
+    @Test
+    public void usersAreHandledInOrderBySingleShard() throws InterruptedException {
+        int shardsAmount = 4;
+        int usersAmount = 50;
+        int messagesAmount = 200;
+        CountDownLatch latch = new CountDownLatch(usersAmount * messagesAmount);
+
+        List<RecordingHandler> shards = new ArrayList<>();
+        for (int i = 0; i < shardsAmount; i++) {
+            shards.add(new RecordingHandler(latch));
+        }
+        ShardedMessageHandler handler = new ShardedMessageHandler(shards, 128);
+
+        for (int i = 0; i < messagesAmount; i++) {
+            for (int userId = 0; userId < usersAmount; userId++) {
+                handler.handle(new Message((byte) 1, (short) 1, userId, String.valueOf(i)));
+            }
+        }
+
+        assertThat(latch.await(30, TimeUnit.SECONDS)).isTrue();
+        handler.stop(1, TimeUnit.SECONDS);
+
+        try (AutoCloseableSoftAssertions assertions = new AutoCloseableSoftAssertions()) {
+            for (int shard = 0; shard < shardsAmount; shard++) {
+                RecordingHandler recording = shards.get(shard);
+                assertions.assertThat(recording.threads).hasSize(1);
+                for (Message message : recording.messages) {
+                    assertions.assertThat(handler.shardOf(message.userId)).isEqualTo(shard);
+                }
+            }
+            for (int userId = 0; userId < usersAmount; userId++) {
+                List<String> payloads = new ArrayList<>();
+                for (Message message : shards.get(handler.shardOf(userId)).messages) {
+                    if (message.userId == userId) {
+                        payloads.add(message.payload);
+                    }
+                }
+                assertions.assertThat(payloads).hasSize(messagesAmount);
+                for (int i = 0; i < payloads.size(); i++) {
+                    assertions.assertThat(payloads.get(i)).isEqualTo(String.valueOf(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Handler without any synchronization, which relies on being called by its shard thread only.
+     */
+    private static class RecordingHandler implements MessageHandler<Message> {
+
+        private final CountDownLatch latch;
+        private final List<Message> messages = new ArrayList<>();
+        private final Set<Thread> threads = new HashSet<>();
+
+        private RecordingHandler(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void handle(Message message) {
+            messages.add(message);
+            threads.add(Thread.currentThread());
+            latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.kotovdv.tcpserver.message;
+
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class VersionedMessageDeserializerTest {
+
+    private final VersionedMessageDeserializer deserializer = new VersionedMessageDeserializer(64);
+    private final VersionedMessageSerializer serializer = new VersionedMessageSerializer();
+
+    /**
+     * Length prefixed and terminated frames, mixed in the same stream, are read back as is.
+     */
+    @Test
+    public void mixedVersions() throws IOException {
+        List<Message> messages = Arrays.asList(
+                new Message((byte) 2, (short) 127, 256, "HELLO"),
+                new Message((byte) 1, (short) -300, Integer.MIN_VALUE, "\u00ff payload"),
+                new Message((byte) 2, (short) 1, -1, "with \u0000 inside"),
+                new Message((byte) 2, (short) 0, 0, "")
+        );
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        for (Message message : messages) {
+            serializer.serialize(message, buffer);
+        }
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new ByteArrayInputStream(buffer.array(), 0, buffer.position())));
+        for (Message message : messages) {
+            assertThat(deserializer.readNext(in).orElseThrow(AssertionError::new)).isEqualToComparingFieldByField(message);
+        }
+        assertThat(deserializer.readNext(in)).isEmpty();
+    }
+
+    /**
+     * Version 2 frame is written with payload length instead of termination char.
+     */
+    @Test
+    public void lengthPrefixedFrame() {
+        Message hello = new Message((byte) 2, (short) 127, 256, "HELLO");
+        ByteBuffer buffer = ByteBuffer.allocate(serializer.sizeOf(hello));
+        serializer.serialize(hello, buffer);
+
+        assertThat(buffer.array()).containsExactly(
+                2, //Version == 2
+                0, 127, //Message Type == 127
+                0, 0, 1, 0, //User ID == 256
+                0, 0, 0, 5, //Payload Length == 5
+                72, 69, 76, 76, 79 //Payload == HELLO
+        );
+    }
+
+    /**
+     * Length above max frame size is rejected before payload is read.
+     */
+    @Test
+    public void lengthPrefixedFrameTooLarge() {
+        DataInputStream in = createInputStream(new byte[]{
+                2, //Version == 2
+                0, 127, //Message Type == 127
+                0, 0, 1, 0, //User ID == 256
+                0, 0, 0, 54, //Payload Length == 54
+        });
+
+        assertThatThrownBy(() -> deserializer.readNext(in))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Illegal payload length 54");
+    }
+
+    /**
+     * Terminated frame is rejected as soon as it grows above max frame size without termination char.
+     */
+    @Test
+    public void terminatedFrameTooLarge() {
+        byte[] frame = new byte[1024];
+        frame[0] = 1;
+        Arrays.fill(frame, 7, frame.length, (byte) 'x');
+
+        for (DataInputStream in : Arrays.asList(
+                createInputStream(frame),
+                new DataInputStream(new BufferedInputStream(new ByteArrayInputStream(frame))))) {
+            assertThatThrownBy(() -> deserializer.readNext(in))
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("exceeds max size");
+        }
+    }
+
+    /**
+     * Stream ending in the middle of the payload results in IOException, while empty stream results in Optional.empty.
+     */
+    @Test
+    public void streamEndedPrematurely() throws IOException {
+        DataInputStream in = createInputStream(new byte[]{
+                2, //Version == 2
+                0, 127, //Message Type == 127
+                0, 0, 1, 0, //User ID == 256
+                0, 0, 0, 5, //Payload Length == 5
+                72, 69 //Payload == HE
+        });
+
+        assertThatThrownBy(() -> deserializer.readNext(in)).isInstanceOf(IOException.class);
+        Optional<Message> empty = deserializer.readNext(createInputStream(new byte[0]));
+        assertThat(empty).isEmpty();
+    }
+
+    private static DataInputStream createInputStream(byte[] bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        });
+    }
+}
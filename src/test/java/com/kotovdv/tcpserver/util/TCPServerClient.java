@@ -1,32 +1,53 @@
 package com.kotovdv.tcpserver.util;
 
+import com.kotovdv.tcpserver.core.message.MessageWriter;
 import com.kotovdv.tcpserver.message.DefaultMessageDeserializer;
+import com.kotovdv.tcpserver.message.DefaultMessageSerializer;
 import com.kotovdv.tcpserver.message.Message;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.List;
 
 public class TCPServerClient {
 
     private final Socket socket;
     private final DataOutputStream dataOutputStream;
+    private final MessageWriter<Message> writer;
+    private final DataInputStream in;
+    private final DefaultMessageDeserializer deserializer = new DefaultMessageDeserializer();
 
     private TCPServerClient(Socket socket,
-                            DataOutputStream dataOutputStream) {
+                            DataOutputStream dataOutputStream,
+                            MessageWriter<Message> writer) throws IOException {
         this.socket = socket;
         this.dataOutputStream = dataOutputStream;
+        this.writer = writer;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
     }
 
     public static TCPServerClient create(int port) {
         try {
-            Socket socket = new Socket("localhost", port);
-            return new TCPServerClient(socket, new DataOutputStream(socket.getOutputStream()));
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", port));
+            Socket socket = channel.socket();
+            return new TCPServerClient(
+                    socket,
+                    new DataOutputStream(socket.getOutputStream()),
+                    new MessageWriter<>(new DefaultMessageSerializer(), channel)
+            );
         } catch (IOException e) {
             throw new RuntimeException("Failed to create tcp server client ", e);
         }
     }
 
+    /**
+     * Sends message encoded byte by byte, independently of the serializers of the server.
+     */
     public void sendMessage(Message message) {
         try {
             dataOutputStream.write(message.version);
@@ -42,6 +63,31 @@ public class TCPServerClient {
         }
     }
 
+    /**
+     * Sends all the messages with as few writes as possible through {@link MessageWriter}.
+     */
+    public void sendMessages(List<Message> messages) {
+        try {
+            for (Message message : messages) {
+                writer.add(message);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to send [" + messages.size() + "] messages", e);
+        }
+    }
+
+    /**
+     * Reads next response of the server, blocking until it arrives.
+     */
+    public Message receiveMessage() {
+        try {
+            return deserializer.readNext(in).orElseThrow(() -> new IOException("Connection closed by server"));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to receive message", e);
+        }
+    }
+
     public void close() {
         try {
             socket.close();